@@ -3,13 +3,17 @@ package com.icehealthsystems.jtrace.metrics;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import com.icehealthsystems.jtrace.publishing.FilePublisher;
 import com.icehealthsystems.jtrace.publishing.NullPublisher;
@@ -18,6 +22,7 @@ import com.icehealthsystems.jtrace.publishing.S3Publisher;
 import com.icehealthsystems.jtrace.runtime.Config;
 import com.icehealthsystems.jtrace.runtime.LogUtils;
 import com.icehealthsystems.jtrace.runtime.methods.MethodExecutionTimer;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
 
 /**
  * A metrics collector which aggregates incoming metrics
@@ -67,10 +72,21 @@ public class AggregatingMetricsCollector implements Serializable {
 	}
 
 	/**
-	 * Instance variable for the aggregated metrics
+	 * Instance variable for the aggregated metrics, keyed by method ID. Only updated
+	 * while holding the collector lock by merging the per thread tables.
 	 */
 	protected final ConcurrentMap<Integer, MethodExecutionMetric> aggregatedMetrics = new ConcurrentHashMap<>();
 
+	/**
+	 * The method execution counters of every thread which has collected metrics
+	 */
+	private transient Queue<ThreadMetricsTable> threadTables;
+
+	/**
+	 * The method execution counters of the current thread
+	 */
+	private transient ThreadLocal<ThreadMetricsTable> threadTable;
+
 	/**
 	 * The timer for scheduling the publishing task
 	 */
@@ -85,6 +101,8 @@ public class AggregatingMetricsCollector implements Serializable {
 	 * Internal constructor
 	 */
 	protected AggregatingMetricsCollector() {
+		initThreadTables();
+
 		publishTimer = new Timer( true );
 		publishTask = new TimerTask() {
 			@Override
@@ -103,6 +121,40 @@ public class AggregatingMetricsCollector implements Serializable {
 		publishTimer.schedule( publishTask, interval, interval );
 	}
 
+	/**
+	 * Creates the (transient) per thread tables
+	 */
+	private void initThreadTables() {
+		final Queue<ThreadMetricsTable> tables = new ConcurrentLinkedQueue<>();
+		threadTables = tables;
+		threadTable = ThreadLocal.withInitial( () -> {
+			final ThreadMetricsTable table = new ThreadMetricsTable();
+			tables.add( table );
+			return table;
+		} );
+	}
+
+	/**
+	 * Merges the collected metrics before serializing
+	 * @param out
+	 * @throws IOException
+	 */
+	private synchronized void writeObject( final ObjectOutputStream out ) throws IOException {
+		mergeThreadTables();
+		out.defaultWriteObject();
+	}
+
+	/**
+	 * Recreates the per thread tables after deserializing
+	 * @param in
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private void readObject( final ObjectInputStream in ) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initThreadTables();
+	}
+
 	/**
 	 * Load a dump file
 	 * @param file
@@ -120,31 +172,77 @@ public class AggregatingMetricsCollector implements Serializable {
 	/**
 	 * Clears all aggregated metrics
 	 */
-	public void reset() {
+	public synchronized void reset() {
+		for ( final Iterator<ThreadMetricsTable> tables = threadTables.iterator(); tables.hasNext(); ) {
+			final ThreadMetricsTable table = tables.next();
+			final boolean ownerDead = table.isOwnerDead();
+			table.discard();
+			if ( ownerDead ) {
+				tables.remove();
+			}
+		}
 		aggregatedMetrics.clear();
 	}
 
+	/**
+	 * Merges the metrics collected by each thread since the previous merge into the aggregated
+	 * metrics, and drops the tables of threads which have died.
+	 */
+	protected synchronized void mergeThreadTables() {
+		for ( final Iterator<ThreadMetricsTable> tables = threadTables.iterator(); tables.hasNext(); ) {
+			final ThreadMetricsTable table = tables.next();
+			// check before merging so nothing recorded by the owner can be missed
+			final boolean ownerDead = table.isOwnerDead();
+			table.mergeInto( aggregatedMetrics );
+			if ( ownerDead ) {
+				tables.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets the method execution counters of the current thread
+	 * @return
+	 */
+	public ThreadMetricsTable getThreadTable() {
+		return threadTable.get();
+	}
+
 	/**
 	 * Collect and aggregate the specified metrics
 	 * @param metrics
 	 */
 	public void collectMethodMetrics( final MethodExecutionTimer timer ) {
-		int result = 1;
-		result = 31 * result + ( ( timer.getExtra() == null ) ? 0 : timer.getExtra().hashCode() );
-		result = 31 * result + ( ( timer.getMethodSignature() == null ) ? 0 : timer.getMethodSignature().hashCode() );
+		collectMethodMetrics( timer.getMethodSignature(), timer.getExtra(), timer.getOwnExecutionDuration(), timer.getTotalExecutionDuration() );
+	}
 
-		aggregatedMetrics.compute( result, ( hashCode, metric ) -> {
-			if ( metric == null ) {
-				return new MethodExecutionMetric( timer );
-			}
-			else {
-				metric.aggregate( timer );
-				return metric;
-			}
-		} );
+	/**
+	 * Collect and aggregate the specified method execution times
+	 * @param methodSignature
+	 * @param extra
+	 * @param ownDuration
+	 * @param totalDuration
+	 */
+	public void collectMethodMetrics( final String methodSignature, final String extra, final long ownDuration, final long totalDuration ) {
+		collectMethodMetrics( MethodRegistry.register( methodSignature, extra ), ownDuration, totalDuration );
+	}
+
+	/**
+	 * Collect and aggregate the execution times of the given registered method
+	 * @param methodId
+	 * @param ownDuration
+	 * @param totalDuration
+	 */
+	public void collectMethodMetrics( final int methodId, final long ownDuration, final long totalDuration ) {
+		threadTable.get().add( methodId, ownDuration, totalDuration );
 	}
 
-	public Set<MethodExecutionMetric> getAggregatedMetrics() {
+	/**
+	 * Gets a copy of the aggregated metrics
+	 * @return
+	 */
+	public synchronized Set<MethodExecutionMetric> getAggregatedMetrics() {
+		mergeThreadTables();
 		return new HashSet<>( aggregatedMetrics.values() );
 	}
 
@@ -153,7 +251,8 @@ public class AggregatingMetricsCollector implements Serializable {
 	 * @param file
 	 * @throws IOException
 	 */
-	public void publish() throws IOException {
+	public synchronized void publish() throws IOException {
+		mergeThreadTables();
 		PUBLISHER.publish( aggregatedMetrics );
 	}
 
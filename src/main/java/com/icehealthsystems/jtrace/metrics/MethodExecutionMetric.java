@@ -48,11 +48,34 @@ public class MethodExecutionMetric implements Serializable {
 	 * @param timer
 	 */
 	public MethodExecutionMetric( final MethodExecutionTimer timer ) {
-		this.methodSignature = timer.getMethodSignature();
-		this.extra = timer.getExtra();
-		this.ownTime = timer.getOwnExecutionDuration();
-		this.totalTime = timer.getTotalExecutionDuration();
-		this.invocations = 1;
+		this( timer.getMethodSignature(), timer.getExtra(), timer.getOwnExecutionDuration(), timer.getTotalExecutionDuration() );
+	}
+
+	/**
+	 * Constructor using the times of a single method execution
+	 * @param methodSignature
+	 * @param extra
+	 * @param ownTime
+	 * @param totalTime
+	 */
+	public MethodExecutionMetric( final String methodSignature, final String extra, final long ownTime, final long totalTime ) {
+		this( methodSignature, extra, 1, ownTime, totalTime );
+	}
+
+	/**
+	 * Constructor using the summed times of multiple method executions
+	 * @param methodSignature
+	 * @param extra
+	 * @param invocations
+	 * @param ownTime
+	 * @param totalTime
+	 */
+	public MethodExecutionMetric( final String methodSignature, final String extra, final int invocations, final long ownTime, final long totalTime ) {
+		this.methodSignature = methodSignature;
+		this.extra = extra;
+		this.ownTime = ownTime;
+		this.totalTime = totalTime;
+		this.invocations = invocations;
 	}
 
 	/**
@@ -60,9 +83,28 @@ public class MethodExecutionMetric implements Serializable {
 	 * @param metric
 	 */
 	public void aggregate( final MethodExecutionTimer timer ) {
-		this.ownTime += timer.getOwnExecutionDuration();
-		this.totalTime += timer.getTotalExecutionDuration();
-		this.invocations++;
+		aggregate( timer.getOwnExecutionDuration(), timer.getTotalExecutionDuration() );
+	}
+
+	/**
+	 * Aggregate the times of a single method execution into this metric
+	 * @param ownTime
+	 * @param totalTime
+	 */
+	public void aggregate( final long ownTime, final long totalTime ) {
+		aggregate( 1, ownTime, totalTime );
+	}
+
+	/**
+	 * Aggregate the summed times of multiple method executions into this metric
+	 * @param invocations
+	 * @param ownTime
+	 * @param totalTime
+	 */
+	public void aggregate( final int invocations, final long ownTime, final long totalTime ) {
+		this.ownTime += ownTime;
+		this.totalTime += totalTime;
+		this.invocations += invocations;
 	}
 
 	/**
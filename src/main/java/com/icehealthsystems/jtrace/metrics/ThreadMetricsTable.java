@@ -0,0 +1,180 @@
+package com.icehealthsystems.jtrace.metrics;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
+
+/**
+ * Method execution counters of a single thread, indexed by method ID. Only the owning
+ * thread writes to the table, and it only keeps running totals, so recording a method
+ * execution takes no locks and does no compare-and-swap. The collector periodically
+ * merges the growth of the totals since the previous merge into the shared metrics.
+ * Counters are kept in fixed size chunks which are never copied when the table grows.
+ *
+ * @author Matt MacLean
+ */
+public class ThreadMetricsTable {
+	/**
+	 * Number of bits of a method ID used to index into a chunk
+	 */
+	private static final int CHUNK_BITS = 8;
+
+	/**
+	 * Mask of the chunk index bits of a method ID
+	 */
+	private static final int CHUNK_MASK = ( 1 << CHUNK_BITS ) - 1;
+
+	/**
+	 * Number of counters per method: invocations, own time and total time
+	 */
+	private static final int WIDTH = 3;
+
+	/**
+	 * Length of a chunk
+	 */
+	private static final int CHUNK_LENGTH = ( 1 << CHUNK_BITS ) * WIDTH;
+
+	/**
+	 * The thread owning this table
+	 */
+	private final transient WeakReference<Thread> owner;
+
+	/**
+	 * Running totals written by the owning thread
+	 */
+	@SuppressWarnings( "PMD.AvoidUsingVolatile" )
+	private transient volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+
+	/**
+	 * Totals as of the previous merge, only used by the merging thread
+	 */
+	private transient long[][] mergedChunks = new long[0][];
+
+	/**
+	 * Creates a table owned by the current thread
+	 */
+	public ThreadMetricsTable() {
+		this.owner = new WeakReference<>( Thread.currentThread() );
+	}
+
+	/**
+	 * Records a single method execution. Must only be called by the owning thread.
+	 * @param methodId
+	 * @param ownDuration
+	 * @param totalDuration
+	 */
+	public void add( final int methodId, final long ownDuration, final long totalDuration ) {
+		final AtomicLongArray chunk = getChunk( methodId >>> CHUNK_BITS );
+		final int offset = ( methodId & CHUNK_MASK ) * WIDTH;
+
+		// single writer, so an ordered write of the new total is enough
+		chunk.lazySet( offset, chunk.get( offset ) + 1 );
+		chunk.lazySet( offset + 1, chunk.get( offset + 1 ) + ownDuration );
+		chunk.lazySet( offset + 2, chunk.get( offset + 2 ) + totalDuration );
+	}
+
+	/**
+	 * Gets (creating if needed) the given chunk
+	 * @param chunkIndex
+	 * @return
+	 */
+	private AtomicLongArray getChunk( final int chunkIndex ) {
+		AtomicLongArray[] current = chunks;
+		if ( chunkIndex < current.length && current[chunkIndex] != null ) {
+			return current[chunkIndex];
+		}
+
+		if ( chunkIndex >= current.length ) {
+			current = Arrays.copyOf( current, chunkIndex + 1 );
+		}
+		final AtomicLongArray chunk = new AtomicLongArray( CHUNK_LENGTH );
+		current[chunkIndex] = chunk;
+
+		// (re)publish the chunks so the merging thread sees the new chunk
+		chunks = current;
+		return chunk;
+	}
+
+	/**
+	 * Checks if the owning thread has died, after which the table will not change anymore
+	 * @return
+	 */
+	public boolean isOwnerDead() {
+		final Thread thread = owner.get();
+		return thread == null || !thread.isAlive();
+	}
+
+	/**
+	 * Merges the executions recorded since the previous merge into the given metrics.
+	 * Must not be called by more than one thread at a time.
+	 * @param metrics metrics keyed by method ID
+	 */
+	public void mergeInto( final ConcurrentMap<Integer, MethodExecutionMetric> metrics ) {
+		final AtomicLongArray[] current = chunks;
+		for ( int chunkIndex = 0; chunkIndex < current.length; chunkIndex++ ) {
+			final AtomicLongArray chunk = current[chunkIndex];
+			if ( chunk == null ) {
+				continue;
+			}
+			final long[] merged = getMergedChunk( chunkIndex );
+			for ( int offset = 0; offset < CHUNK_LENGTH; offset += WIDTH ) {
+				final long invocations = chunk.get( offset );
+				if ( invocations == merged[offset] ) {
+					continue;
+				}
+				final long ownTime = chunk.get( offset + 1 );
+				final long totalTime = chunk.get( offset + 2 );
+				final int methodId = ( chunkIndex << CHUNK_BITS ) | ( offset / WIDTH );
+				final int newInvocations = (int)( invocations - merged[offset] );
+				final long newOwnTime = ownTime - merged[offset + 1];
+				final long newTotalTime = totalTime - merged[offset + 2];
+
+				final MethodExecutionMetric metric = metrics.get( methodId );
+				if ( metric == null ) {
+					metrics.put( methodId, new MethodExecutionMetric( MethodRegistry.getMethodSignature( methodId ), MethodRegistry.getExtra( methodId ), newInvocations, newOwnTime, newTotalTime ) );
+				}
+				else {
+					metric.aggregate( newInvocations, newOwnTime, newTotalTime );
+				}
+
+				merged[offset] = invocations;
+				merged[offset + 1] = ownTime;
+				merged[offset + 2] = totalTime;
+			}
+		}
+	}
+
+	/**
+	 * Discards the executions recorded since the previous merge.
+	 * Must not be called by more than one thread at a time.
+	 */
+	public void discard() {
+		final AtomicLongArray[] current = chunks;
+		for ( int chunkIndex = 0; chunkIndex < current.length; chunkIndex++ ) {
+			final AtomicLongArray chunk = current[chunkIndex];
+			if ( chunk != null ) {
+				final long[] merged = getMergedChunk( chunkIndex );
+				for ( int offset = 0; offset < CHUNK_LENGTH; offset++ ) {
+					merged[offset] = chunk.get( offset );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets (creating if needed) the merged totals of the given chunk
+	 * @param chunkIndex
+	 * @return
+	 */
+	private long[] getMergedChunk( final int chunkIndex ) {
+		if ( chunkIndex >= mergedChunks.length ) {
+			mergedChunks = Arrays.copyOf( mergedChunks, chunkIndex + 1 );
+		}
+		if ( mergedChunks[chunkIndex] == null ) {
+			mergedChunks[chunkIndex] = new long[CHUNK_LENGTH];
+		}
+		return mergedChunks[chunkIndex];
+	}
+}
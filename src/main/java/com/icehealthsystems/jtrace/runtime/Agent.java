@@ -4,6 +4,8 @@ import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.JMException;
 import com.icehealthsystems.jtrace.metrics.AggregatingMetricsCollector;
 import com.icehealthsystems.jtrace.transform.MethodTransformer;
 import com.icehealthsystems.jtrace.util.TimeUtils;
@@ -19,6 +21,16 @@ public class Agent {
 	 */
 	private final transient ConcurrentMap<String, ClassFileTransformer> transformers = new ConcurrentHashMap<>();
 
+	/**
+	 * Has an agent been started in this JVM
+	 */
+	protected static final AtomicBoolean STARTED = new AtomicBoolean();
+
+	/**
+	 * Retransforms loaded classes, or null if retransforming is not supported or method profiling is not setup
+	 */
+	protected transient ClassRetransformer retransformer;
+
 	/**
 	 * Creates the agent
 	 * @param argsString
@@ -35,33 +47,92 @@ public class Agent {
 			TimeUtils.timeCallable = TimeUtils.MILLIS;
 		}
 
-		// setup the method profiling transformer
+		// setup the method profiling transformer (disabled until enabled through JMX if profiling is disabled)
 		if ( Config.getInstance().isMethodProfilingEnabled() ) {
 			LogUtils.println( "JTrace enabling method profiling..." );
 			transformers.put( "method", new MethodTransformer() );
 		}
+		else if ( Config.getInstance().isJmxEnabled() ) {
+			transformers.put( "method", new MethodTransformer() );
+		}
 
 		// instantiates the INSTANCE
 		AggregatingMetricsCollector.INSTANCE.hashCode();
 	}
 
+	/**
+	 * Gets the version of the agent
+	 * @return the implementation version from the agent jar's manifest, or "development"
+	 */
+	public static String getVersion() {
+		final String version = Agent.class.getPackage().getImplementationVersion();
+		return version == null ? "development" : version;
+	}
+
 	/**
 	 * Runs the agent
 	 * @param instrumentation
 	 */
 	public void run( final Instrumentation instrumentation ) {
+		final boolean retransformSupported = instrumentation.isRetransformClassesSupported();
 		for ( final ClassFileTransformer transformer : transformers.values() ) {
-			instrumentation.addTransformer( transformer );
+			instrumentation.addTransformer( transformer, retransformSupported );
+		}
+
+		final MethodTransformer methodTransformer = (MethodTransformer)transformers.get( "method" );
+		if ( retransformSupported && methodTransformer != null ) {
+			retransformer = new ClassRetransformer( instrumentation, methodTransformer, Config.getInstance().getRetransformBatchSize(), Config.getInstance().getRetransformBudget() );
+		}
+
+		// runtime control
+		if ( Config.getInstance().isJmxEnabled() && methodTransformer != null ) {
+			if ( retransformer != null ) {
+				try {
+					new ProfilerControl( methodTransformer, retransformer ).register();
+				}
+				catch ( JMException ex ) {
+					LogUtils.println( "Failed to register the JMX control: " + ex.getMessage() );
+				}
+			}
+			else {
+				LogUtils.println( "Retransforming classes is not supported, not registering the JMX control" );
+			}
 		}
 	}
 
 	/**
-	 * agentmain
+	 * Instruments the classes which were loaded before the agent was attached, in the background
+	 * @return the thread instrumenting the classes, or null if there is nothing to instrument
+	 */
+	protected Thread instrumentLoadedClasses() {
+		final MethodTransformer methodTransformer = (MethodTransformer)transformers.get( "method" );
+		if ( methodTransformer == null || !methodTransformer.isEnabled() ) {
+			return null;
+		}
+		if ( retransformer == null ) {
+			LogUtils.println( "Retransforming classes is not supported, only classes loaded from now on will be profiled" );
+			return null;
+		}
+
+		final Thread thread = new Thread( () -> LogUtils.println( "Instrumented " + retransformer.retransformLoadedClasses() + " loaded classes" ), "jtrace-attach" );
+		thread.setDaemon( true );
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * agentmain, attaches the agent to a running JVM
 	 * @param args
 	 * @param instrumentation
 	 */
 	public static void agentmain( final String args, final Instrumentation instrumentation ) {
-		premain( args, instrumentation );
+		if ( STARTED.getAndSet( true ) ) {
+			LogUtils.println( "JTrace agent is already running" );
+			return;
+		}
+		final Agent instance = new Agent( args );
+		instance.run( instrumentation );
+		instance.instrumentLoadedClasses();
 	}
 
 	/**
@@ -70,6 +141,7 @@ public class Agent {
 	 * @param instrumentation
 	 */
 	public static void premain( final String args, final Instrumentation instrumentation ) {
+		STARTED.set( true );
 		final Agent instance = new Agent( args );
 		instance.run( instrumentation );
 	}
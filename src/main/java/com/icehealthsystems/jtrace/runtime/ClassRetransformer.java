@@ -0,0 +1,134 @@
+package com.icehealthsystems.jtrace.runtime;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.icehealthsystems.jtrace.transform.MethodTransformer;
+
+/**
+ * Retransforms the loaded classes which should be profiled in batches. Retransforming
+ * stops the application at a safepoint for as long as a batch takes, so when a pause
+ * budget is given the batch size is adjusted to keep each pause within the budget, and the
+ * application is left to run for at least as long as the previous pause between batches.
+ *
+ * @author Matt MacLean
+ */
+public class ClassRetransformer {
+	/**
+	 * Instrumentation used to retransform classes
+	 */
+	private final transient Instrumentation instrumentation;
+
+	/**
+	 * The method profiling transformer deciding which classes are retransformed
+	 */
+	private final transient MethodTransformer transformer;
+
+	/**
+	 * Maximum number of classes retransformed at once
+	 */
+	private final transient int maxBatchSize;
+
+	/**
+	 * Longest pause a batch should cause in nanoseconds, or 0 to retransform without pacing
+	 */
+	private final transient long pauseBudget;
+
+	/**
+	 * Creates a retransformer
+	 * @param instrumentation
+	 * @param transformer
+	 * @param maxBatchSize
+	 * @param pauseBudgetMillis the longest pause a batch should cause, or 0 to retransform without pacing
+	 */
+	public ClassRetransformer( final Instrumentation instrumentation, final MethodTransformer transformer, final int maxBatchSize, final long pauseBudgetMillis ) {
+		this.instrumentation = instrumentation;
+		this.transformer = transformer;
+		this.maxBatchSize = Math.max( 1, maxBatchSize );
+		this.pauseBudget = TimeUnit.MILLISECONDS.toNanos( Math.max( 0, pauseBudgetMillis ) );
+	}
+
+	/**
+	 * Retransforms the loaded classes which should be profiled
+	 * @return the number of classes retransformed
+	 */
+	public int retransformLoadedClasses() {
+		final List<Class<?>> classes = new ArrayList<>();
+		for ( final Class<?> clazz : instrumentation.getAllLoadedClasses() ) {
+			if ( instrumentation.isModifiableClass( clazz ) && transformer.shouldRetransform( clazz ) ) {
+				classes.add( clazz );
+			}
+		}
+
+		// paced retransforms start small and grow while the pauses stay within budget
+		int batchSize = pauseBudget > 0 ? 1 : maxBatchSize;
+		int retransformed = 0;
+		for ( int index = 0; index < classes.size(); ) {
+			final List<Class<?>> batch = classes.subList( index, Math.min( classes.size(), index + batchSize ) );
+			index += batch.size();
+
+			final long start = System.nanoTime();
+			retransformed += retransform( batch );
+			final long pause = System.nanoTime() - start;
+
+			if ( pauseBudget > 0 ) {
+				batchSize = nextBatchSize( batchSize, pause );
+				if ( !sleep( pause ) ) {
+					LogUtils.println( "Interrupted while retransforming classes" );
+					break;
+				}
+			}
+		}
+		return retransformed;
+	}
+
+	/**
+	 * Gets the size of the next batch given the pause the last batch caused
+	 * @param batchSize
+	 * @param pause
+	 * @return
+	 */
+	protected int nextBatchSize( final int batchSize, final long pause ) {
+		if ( pause > pauseBudget ) {
+			return Math.max( 1, batchSize / 2 );
+		}
+		if ( pause < pauseBudget / 2 ) {
+			return Math.min( maxBatchSize, batchSize * 2 );
+		}
+		return batchSize;
+	}
+
+	/**
+	 * Retransforms a batch of classes
+	 * @param batch
+	 * @return the number of classes retransformed
+	 */
+	private int retransform( final List<Class<?>> batch ) {
+		try {
+			instrumentation.retransformClasses( batch.toArray( new Class<?>[batch.size()] ) );
+			return batch.size();
+		}
+		catch ( UnmodifiableClassException | LinkageError ex ) {
+			LogUtils.println( "Error retransforming classes: " + ex.getMessage() );
+			return 0;
+		}
+	}
+
+	/**
+	 * Lets the application run between batches
+	 * @param nanos
+	 * @return false if the thread was interrupted
+	 */
+	private static boolean sleep( final long nanos ) {
+		try {
+			TimeUnit.NANOSECONDS.sleep( nanos );
+			return true;
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -65,6 +65,47 @@ public final class Config {
 		return !"true".equals( get( "disableMethodProfiling", "false" ) );
 	}
 
+	/**
+	 * Gets the bytecode instrumentation backend (javassist or asm)
+	 * @return
+	 */
+	public String getBackend() {
+		return get( "backend", "javassist" );
+	}
+
+	/**
+	 * Gets the directory instrumented classes are cached in
+	 * @return the directory or null if instrumented classes should not be cached
+	 */
+	public String getCacheDir() {
+		return get( "cacheDir", null );
+	}
+
+	/**
+	 * Checks if the JMX control for enabling and disabling profiling at runtime should be registered
+	 * @return
+	 */
+	public boolean isJmxEnabled() {
+		return "true".equals( get( "jmx", "false" ) );
+	}
+
+	/**
+	 * Gets the maximum number of classes retransformed at once when profiling is enabled or
+	 * disabled at runtime or when the agent is attached
+	 * @return
+	 */
+	public int getRetransformBatchSize() {
+		return Integer.parseInt( get( "retransformBatchSize", "100" ) );
+	}
+
+	/**
+	 * Gets the longest pause in milliseconds a batch of retransformed classes should cause
+	 * @return the pause budget, or 0 to retransform without pacing
+	 */
+	public long getRetransformBudget() {
+		return Long.parseLong( get( "retransformBudget", "20" ) );
+	}
+
 	/**
 	 * The interval in which dump files are written to disk.
 	 * @return
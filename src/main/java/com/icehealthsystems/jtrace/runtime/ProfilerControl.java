@@ -0,0 +1,87 @@
+package com.icehealthsystems.jtrace.runtime;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import com.icehealthsystems.jtrace.transform.MethodTransformer;
+
+/**
+ * Enables and disables method profiling of a running JVM. The loaded classes which should
+ * be profiled are retransformed in paced batches, which adds the probes to them or removes the
+ * probes so disabled profiling costs nothing. Method executions which are running while
+ * their class is retransformed keep running the code they started with, the method
+ * execution stack ignores the exits of executions which started before profiling was enabled.
+ *
+ * @author Matt MacLean
+ */
+public class ProfilerControl implements ProfilerControlMBean {
+	/**
+	 * The JMX object name the control is registered with
+	 */
+	public static final String OBJECT_NAME = "com.icehealthsystems.jtrace:type=ProfilerControl";
+
+	/**
+	 * The method profiling transformer
+	 */
+	private final transient MethodTransformer transformer;
+
+	/**
+	 * Retransforms the loaded classes
+	 */
+	private final transient ClassRetransformer retransformer;
+
+	/**
+	 * Creates a control for the given transformer
+	 * @param transformer
+	 * @param retransformer
+	 */
+	public ProfilerControl( final MethodTransformer transformer, final ClassRetransformer retransformer ) {
+		this.transformer = transformer;
+		this.retransformer = retransformer;
+	}
+
+	/**
+	 * Registers the control with the platform MBean server
+	 * @throws JMException
+	 */
+	public void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean( this, new ObjectName( OBJECT_NAME ) );
+		LogUtils.println( "Registered JMX control: " + OBJECT_NAME );
+	}
+
+	/**
+	 * Checks if method profiling is enabled
+	 */
+	@Override
+	public boolean isEnabled() {
+		return transformer.isEnabled();
+	}
+
+	/**
+	 * Enables method profiling
+	 */
+	@Override
+	public void enable() {
+		setEnabled( true );
+	}
+
+	/**
+	 * Disables method profiling
+	 */
+	@Override
+	public void disable() {
+		setEnabled( false );
+	}
+
+	/**
+	 * Enables or disables method profiling and retransforms the loaded classes
+	 * @param enabled
+	 */
+	protected synchronized void setEnabled( final boolean enabled ) {
+		if ( transformer.isEnabled() == enabled ) {
+			return;
+		}
+		transformer.setEnabled( enabled );
+		LogUtils.println( ( enabled ? "Enabled" : "Disabled" ) + " method profiling, retransformed " + retransformer.retransformLoadedClasses() + " classes" );
+	}
+}
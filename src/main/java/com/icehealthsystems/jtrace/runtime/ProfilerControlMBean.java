@@ -0,0 +1,24 @@
+package com.icehealthsystems.jtrace.runtime;
+
+/**
+ * JMX management interface of the profiler
+ * 
+ * @author Matt MacLean
+ */
+public interface ProfilerControlMBean {
+	/**
+	 * Checks if method profiling is enabled
+	 * @return
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Enables method profiling, instrumenting the loaded classes which should be profiled
+	 */
+	void enable();
+
+	/**
+	 * Disables method profiling, removing the probes from the loaded classes
+	 */
+	void disable();
+}
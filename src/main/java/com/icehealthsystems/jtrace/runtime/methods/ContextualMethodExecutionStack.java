@@ -1,9 +1,9 @@
 package com.icehealthsystems.jtrace.runtime.methods;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
-import com.icehealthsystems.jtrace.metrics.AggregatingMetricsCollector;
 import com.icehealthsystems.jtrace.runtime.Config;
 import com.icehealthsystems.jtrace.runtime.LogUtils;
 
@@ -26,11 +26,31 @@ public class ContextualMethodExecutionStack extends MethodExecutionStack {
 		}
 	}
 
+	/**
+	 * Cached context match of a method ID which has not been checked yet
+	 */
+	private static final byte UNCHECKED = 0;
+
+	/**
+	 * Cached context match of a method ID which is a context
+	 */
+	private static final byte CONTEXT = 1;
+
+	/**
+	 * Cached context match of a method ID which is not a context
+	 */
+	private static final byte NOT_CONTEXT = 2;
+
 	/**
 	 * Value tracking how many times a method was called which was from within a context
 	 */
 	protected transient int inContextCount;
 
+	/**
+	 * Context matches indexed by method ID so the context patterns are only evaluated once per method
+	 */
+	private transient byte[] contextMatches = new byte[0];
+
 	/**
 	 * Checks if the given method signature matches any contexts
 	 * @param methodSignature
@@ -46,54 +66,85 @@ public class ContextualMethodExecutionStack extends MethodExecutionStack {
 	}
 
 	/**
-	 * Called when a method execution in the current thread is starting
-	 * @param methodSignature
-	 * @param extra
+	 * Checks if the given registered method matches any contexts
+	 * @param methodId
+	 * @return
+	 */
+	protected boolean inContext( final int methodId ) {
+		if ( methodId >= contextMatches.length ) {
+			contextMatches = Arrays.copyOf( contextMatches, Math.max( MethodRegistry.size(), methodId + 1 ) );
+		}
+		if ( contextMatches[methodId] == UNCHECKED ) {
+			final String methodSignature = MethodRegistry.getMethodSignature( methodId );
+			contextMatches[methodId] = methodSignature != null && inContext( methodSignature ) ? CONTEXT : NOT_CONTEXT;
+		}
+		return contextMatches[methodId] == CONTEXT;
+	}
+
+	/**
+	 * Called when the execution of a registered method in the current thread is starting
+	 * @param methodId
 	 */
 	@Override
-	public void methodExecutionStarting( final String methodSignature, final String extra ) {
+	public void methodExecutionStarting( final int methodId ) {
 		// if there is a currently profiled method that is executing
-		if ( stack.size() > 0 ) {
+		if ( timers.size() > 0 ) {
 			// pause it's execution timer
-			stack.peek().pauseTiming();
+			timers.pauseTiming();
 		}
 
-		// then create a new timer for the method execution that is starting
-		final MethodExecutionTimer timer = stack.push( new MethodExecutionTimer( methodSignature, extra ) );
+		// then push a timer for the method execution that is starting
+		timers.push( methodId );
 
-		if ( inContext( methodSignature ) ) {
+		if ( inContext( methodId ) ) {
 			inContextCount++;
 		}
 
 		// and start timing it's execution
-		timer.startTiming();
+		timers.startTiming();
 	}
 
 	/**
-	 * Called when a method execution in the current thread has completed
-	 * @param methodSignature
-	 * @param extra
+	 * Called when the execution of a registered method in the current thread has completed
+	 * @param methodId
 	 */
 	@Override
-	public void methodExecutionEnded() {
-		// remove the method execution timer from the stack
-		final MethodExecutionTimer timer = stack.pop();
+	public void methodExecutionEnded( final int methodId ) {
+		// ignore exits of methods which are not on the stack, discard executions which never ended
+		if ( timers.size() == 0 || timers.getMethodId() != methodId && !unwindTo( methodId ) ) {
+			return;
+		}
 
 		// stop timing the method and get the execution times
-		timer.pauseTiming();
+		timers.pauseTiming();
+		final long totalDuration = timers.getTotalExecutionDuration();
 
 		if ( inContextCount > 0 ) {
-			AggregatingMetricsCollector.INSTANCE.collectMethodMetrics( timer );
+			metrics.add( timers.getMethodId(), timers.getOwnExecutionDuration(), totalDuration );
 		}
 
-		if ( inContext( timer.getMethodSignature() ) ) {
+		if ( inContext( timers.getMethodId() ) ) {
 			inContextCount--;
 		}
 
+		// remove the method execution timer from the stack
+		timers.pop();
+
 		// if there was a profiled method executing before this method
-		if ( stack.size() > 0 ) {
+		if ( timers.size() > 0 ) {
 			// restart it's timer passing along this methods total execution time
-			stack.peek().resumeTiming( timer.getTotalExecutionDuration() );
+			timers.resumeTiming( totalDuration );
+		}
+	}
+
+	/**
+	 * Removes the top method execution without collecting it, leaving it's context
+	 */
+	@Override
+	protected void discardTop() {
+		if ( inContext( timers.getMethodId() ) ) {
+			inContextCount--;
 		}
+		super.discardTop();
 	}
 }
@@ -1,51 +1,53 @@
 package com.icehealthsystems.jtrace.runtime.methods;
 
-import com.icehealthsystems.jtrace.metrics.AggregatingMetricsCollector;
-
 /**
  * This class keeps track of method executions across an entire thread.
  * @author Matt MacLean
  */
 public class DefaultMethodExecutionStack extends MethodExecutionStack {
 	/**
-	 * Called when a method execution in the current thread is starting
-	 * @param methodSignature
-	 * @param extra
+	 * Called when the execution of a registered method in the current thread is starting
+	 * @param methodId
 	 */
 	@Override
-	public void methodExecutionStarting( final String methodSignature, final String extra ) {
+	public void methodExecutionStarting( final int methodId ) {
 		// if there is a currently profiled method that is executing
-		if ( stack.size() > 0 ) {
+		if ( timers.size() > 0 ) {
 			// pause it's execution timer
-			stack.peek().pauseTiming();
+			timers.pauseTiming();
 		}
 
-		// then create a new timer for the method execution that is starting
-		final MethodExecutionTimer timer = stack.push( new MethodExecutionTimer( methodSignature, extra ) );
+		// then push a timer for the method execution that is starting
+		timers.push( methodId );
 
 		// and start timing it's execution
-		timer.startTiming();
+		timers.startTiming();
 	}
 
 	/**
-	 * Called when a method execution in the current thread has completed
-	 * @param methodSignature
-	 * @param extra
+	 * Called when the execution of a registered method in the current thread has completed
+	 * @param methodId
 	 */
 	@Override
-	public void methodExecutionEnded() {
-		// remove the method execution timer from the stack
-		final MethodExecutionTimer timer = stack.pop();
+	public void methodExecutionEnded( final int methodId ) {
+		// ignore exits of methods which are not on the stack, discard executions which never ended
+		if ( timers.size() == 0 || timers.getMethodId() != methodId && !unwindTo( methodId ) ) {
+			return;
+		}
 
 		// stop timing the method and get the execution times
-		timer.pauseTiming();
+		timers.pauseTiming();
+		final long totalDuration = timers.getTotalExecutionDuration();
 
-		AggregatingMetricsCollector.INSTANCE.collectMethodMetrics( timer );
+		metrics.add( timers.getMethodId(), timers.getOwnExecutionDuration(), totalDuration );
+
+		// remove the method execution timer from the stack
+		timers.pop();
 
 		// if there was a profiled method executing before this method
-		if ( stack.size() > 0 ) {
+		if ( timers.size() > 0 ) {
 			// restart it's timer passing along this methods total execution time
-			stack.peek().resumeTiming( timer.getTotalExecutionDuration() );
+			timers.resumeTiming( totalDuration );
 		}
 	}
 }
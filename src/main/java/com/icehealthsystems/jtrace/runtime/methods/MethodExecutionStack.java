@@ -1,7 +1,7 @@
 package com.icehealthsystems.jtrace.runtime.methods;
 
-import java.util.Stack;
-import java.util.concurrent.ConcurrentHashMap;
+import com.icehealthsystems.jtrace.metrics.AggregatingMetricsCollector;
+import com.icehealthsystems.jtrace.metrics.ThreadMetricsTable;
 import com.icehealthsystems.jtrace.runtime.Config;
 import com.icehealthsystems.jtrace.runtime.LogUtils;
 
@@ -15,9 +15,11 @@ import com.icehealthsystems.jtrace.runtime.LogUtils;
 @SuppressWarnings( "PMD.AbstractNaming" )
 public abstract class MethodExecutionStack {
 	/**
-	 * A concurrent map for holding the MethodExecutionStack instances for each thread
+	 * Holds the MethodExecutionStack instance of each thread. Thread confined so a lookup
+	 * costs the same no matter how many threads exist, and a thread's stack is released
+	 * along with the thread when it dies.
 	 */
-	protected static final ConcurrentHashMap<Integer, MethodExecutionStack> STACKS_BY_THREAD = new ConcurrentHashMap<>();
+	protected static final ThreadLocal<MethodExecutionStack> STACKS_BY_THREAD = new ThreadLocal<>();
 
 	/**
 	 * MethodExecutionStack implementation class
@@ -34,31 +36,39 @@ public abstract class MethodExecutionStack {
 	}
 
 	/**
-	 * A Stack for keeping track of method execution timers
+	 * A primitive stack for keeping track of method execution timers
 	 */
-	protected final transient Stack<MethodExecutionTimer> stack;
+	protected final transient MethodExecutionTimerStack timers;
+
+	/**
+	 * The method execution counters of the owning thread
+	 */
+	protected final transient ThreadMetricsTable metrics;
 
 	/**
 	 * Gets the MethodExecutuionStack instance for the current thread
 	 * @return
 	 */
 	public static MethodExecutionStack getForThread() {
-		return STACKS_BY_THREAD.computeIfAbsent( Thread.currentThread().hashCode(), threadHashCode -> {
+		MethodExecutionStack stack = STACKS_BY_THREAD.get();
+		if ( stack == null ) {
 			try {
-				return stackImplClass.newInstance();
+				stack = stackImplClass.newInstance();
+				STACKS_BY_THREAD.set( stack );
 			}
 			catch ( IllegalAccessException | InstantiationException ex ) {
 				LogUtils.println( "Failed to create stack implementation class: " + ex.getMessage() );
-				return null;
 			}
-		} );
+		}
+		return stack;
 	}
 
 	/**
 	 * Use MethodExecutionStack.getForThread()
 	 */
 	protected MethodExecutionStack() {
-		this.stack = new Stack<>();
+		this.timers = new MethodExecutionTimerStack();
+		this.metrics = AggregatingMetricsCollector.INSTANCE.getThreadTable();
 	}
 
 	/**
@@ -66,12 +76,63 @@ public abstract class MethodExecutionStack {
 	 * @param methodSignature
 	 * @param extra
 	 */
-	public abstract void methodExecutionStarting( final String methodSignature, final String extra );
+	public void methodExecutionStarting( final String methodSignature, final String extra ) {
+		methodExecutionStarting( MethodRegistry.register( methodSignature, extra ) );
+	}
 
 	/**
-	 * Called when a method execution in the current thread has completed
-	 * @param methodSignature
-	 * @param extra
+	 * Called when the execution of a registered method in the current thread is starting
+	 * @param methodId the {@link MethodRegistry} ID of the method
+	 */
+	public abstract void methodExecutionStarting( final int methodId );
+
+	/**
+	 * Called when the top method execution in the current thread has completed
+	 */
+	public void methodExecutionEnded() {
+		if ( timers.size() > 0 ) {
+			methodExecutionEnded( timers.getMethodId() );
+		}
+	}
+
+	/**
+	 * Called when the execution of a registered method in the current thread has completed,
+	 * either by returning or by throwing. If the method is not the top method execution the
+	 * stack is recovered with {@link #unwindTo(int)} and if the method is not on the stack at
+	 * all the call is ignored.
+	 * @param methodId the {@link MethodRegistry} ID of the method
 	 */
-	public abstract void methodExecutionEnded();
+	public abstract void methodExecutionEnded( final int methodId );
+
+	/**
+	 * Recovers an unbalanced stack by discarding the method executions above the execution
+	 * of the given method which never reported ending (Ex: started before a class was
+	 * instrumented, or left by a constructor throwing before calling it's super constructor).
+	 * The discarded executions are not collected, their time is counted as callee time of
+	 * the method executions below them.
+	 * @param methodId
+	 * @return false if the method is not on the stack
+	 */
+	protected boolean unwindTo( final int methodId ) {
+		final int index = timers.lastIndexOf( methodId );
+		if ( index < 0 ) {
+			return false;
+		}
+		while ( timers.size() > index + 1 ) {
+			discardTop();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the top method execution without collecting it
+	 */
+	protected void discardTop() {
+		timers.pauseTiming();
+		final long totalDuration = timers.getTotalExecutionDuration();
+		timers.pop();
+		if ( timers.size() > 0 ) {
+			timers.resumeTiming( totalDuration );
+		}
+	}
 }
@@ -0,0 +1,164 @@
+package com.icehealthsystems.jtrace.runtime.methods;
+
+import java.util.Arrays;
+import com.icehealthsystems.jtrace.util.TimeUtils;
+
+/**
+ * A stack of method execution timers kept in growable primitive arrays. Behaves like a
+ * stack of {@link MethodExecutionTimer} instances, however once the arrays have grown to
+ * the deepest call depth of the owning thread, pushing and popping method executions
+ * no longer allocates anything. Instances are confined to a single thread and do no locking.
+ *
+ * @author Matt MacLean
+ */
+public class MethodExecutionTimerStack {
+	/**
+	 * Initial stack depth capacity
+	 */
+	private static final int INITIAL_CAPACITY = 32;
+
+	/**
+	 * Registered method IDs of the method executions on the stack
+	 */
+	private transient int[] methodIds;
+
+	/**
+	 * When each method execution was started or last resumed
+	 */
+	private transient long[] startTimes;
+
+	/**
+	 * Own duration of each method execution
+	 */
+	private transient long[] ownDurations;
+
+	/**
+	 * Total callee duration of each method execution
+	 */
+	private transient long[] calleeDurations;
+
+	/**
+	 * Current stack depth
+	 */
+	private transient int depth;
+
+	/**
+	 * Creates an empty stack
+	 */
+	public MethodExecutionTimerStack() {
+		methodIds = new int[INITIAL_CAPACITY];
+		startTimes = new long[INITIAL_CAPACITY];
+		ownDurations = new long[INITIAL_CAPACITY];
+		calleeDurations = new long[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Gets the number of method executions on the stack
+	 * @return
+	 */
+	public int size() {
+		return depth;
+	}
+
+	/**
+	 * Pushes a new method execution on to the stack. Timing is not started
+	 * until {@link #startTiming()} is called.
+	 * @param methodId the {@link MethodRegistry} ID of the method
+	 */
+	public void push( final int methodId ) {
+		if ( depth == methodIds.length ) {
+			grow();
+		}
+		methodIds[depth] = methodId;
+		startTimes[depth] = 0;
+		ownDurations[depth] = 0;
+		calleeDurations[depth] = 0;
+		depth++;
+	}
+
+	/**
+	 * Removes the top method execution from the stack
+	 */
+	public void pop() {
+		depth--;
+	}
+
+	/**
+	 * Tracks the start of the top method execution
+	 */
+	public void startTiming() {
+		startTimes[depth - 1] = TimeUtils.get();
+	}
+
+	/**
+	 * Resumes the timing of the top method execution and passes the total
+	 * amount of time spent in the callee method which just completed.
+	 * @param calleeDuration
+	 */
+	public void resumeTiming( final long calleeDuration ) {
+		final int top = depth - 1;
+		calleeDurations[top] += calleeDuration;
+		startTimes[top] = TimeUtils.get();
+	}
+
+	/**
+	 * Pauses ("stops") the timing of the top method execution, either because
+	 * a callee is starting it's execution or because the method execution has ended.
+	 * @return the own duration of the top method execution so far
+	 */
+	public long pauseTiming() {
+		final int top = depth - 1;
+		ownDurations[top] += TimeUtils.get() - startTimes[top];
+		return ownDurations[top];
+	}
+
+	/**
+	 * Gets the own duration of the top method execution
+	 * @return
+	 */
+	public long getOwnExecutionDuration() {
+		return ownDurations[depth - 1];
+	}
+
+	/**
+	 * Gets the total duration (own and callees) of the top method execution
+	 * @return
+	 */
+	public long getTotalExecutionDuration() {
+		final int top = depth - 1;
+		return ownDurations[top] + calleeDurations[top];
+	}
+
+	/**
+	 * Gets the method ID of the top method execution
+	 * @return
+	 */
+	public int getMethodId() {
+		return methodIds[depth - 1];
+	}
+
+	/**
+	 * Finds the method execution of the given method closest to the top of the stack
+	 * @param methodId
+	 * @return the depth index (0 being the bottom) or -1 if the method is not on the stack
+	 */
+	public int lastIndexOf( final int methodId ) {
+		for ( int i = depth - 1; i >= 0; i-- ) {
+			if ( methodIds[i] == methodId ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Doubles the capacity of the stack
+	 */
+	private void grow() {
+		final int capacity = methodIds.length * 2;
+		methodIds = Arrays.copyOf( methodIds, capacity );
+		startTimes = Arrays.copyOf( startTimes, capacity );
+		ownDurations = Arrays.copyOf( ownDurations, capacity );
+		calleeDurations = Arrays.copyOf( calleeDurations, capacity );
+	}
+}
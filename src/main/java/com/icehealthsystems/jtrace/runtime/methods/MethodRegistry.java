@@ -0,0 +1,162 @@
+package com.icehealthsystems.jtrace.runtime.methods;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns each profiled method (signature and extra information) a dense integer ID.
+ * IDs are handed out while classes are being transformed so the inserted probes only
+ * pass an int, and metrics can be aggregated by indexing an array rather than hashing
+ * signature strings on every method exit.
+ *
+ * @author Matt MacLean
+ */
+public final class MethodRegistry {
+	/**
+	 * Initial capacity of the method arrays
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Map of registered methods (signature and extra) to their IDs
+	 */
+	private static final ConcurrentMap<List<String>, Integer> IDS = new ConcurrentHashMap<>();
+
+	/**
+	 * Method signatures indexed by method ID
+	 */
+	private static String[] signatures = new String[INITIAL_CAPACITY];
+
+	/**
+	 * Extra information indexed by method ID
+	 */
+	private static String[] extras = new String[INITIAL_CAPACITY];
+
+	/**
+	 * Number of registered methods. Written after the method arrays so reading it first
+	 * makes all registered methods below it visible to the reading thread.
+	 */
+	@SuppressWarnings( "PMD.AvoidUsingVolatile" )
+	private static volatile int registered;
+
+	/**
+	 * Utility class
+	 */
+	private MethodRegistry() {
+		// NO OP
+	}
+
+	/**
+	 * Gets the ID of the given method, registering it if it was not registered before
+	 * @param methodSignature
+	 * @param extra
+	 * @return
+	 */
+	public static int register( final String methodSignature, final String extra ) {
+		final Integer methodId = IDS.get( Arrays.asList( methodSignature, extra ) );
+		if ( methodId != null ) {
+			return methodId;
+		}
+		return create( methodSignature, extra );
+	}
+
+	/**
+	 * Creates the ID of a method which was not registered before
+	 * @param methodSignature
+	 * @param extra
+	 * @return
+	 */
+	private static synchronized int create( final String methodSignature, final String extra ) {
+		return IDS.computeIfAbsent( Arrays.asList( methodSignature, extra ), key -> {
+			final int methodId = registered;
+			ensureCapacity( methodId + 1 );
+			signatures[methodId] = methodSignature;
+			extras[methodId] = extra;
+			registered = methodId + 1;
+			return methodId;
+		} );
+	}
+
+	/**
+	 * Registers a method with the given ID, which was assigned to it by an earlier run (Ex: the
+	 * ID inside cached instrumented class bytes)
+	 * @param methodId
+	 * @param methodSignature
+	 * @param extra
+	 * @return false if the method or the ID is already registered to something else
+	 */
+	public static synchronized boolean claim( final int methodId, final String methodSignature, final String extra ) {
+		final Integer registeredId = IDS.get( Arrays.asList( methodSignature, extra ) );
+		if ( registeredId != null ) {
+			return registeredId == methodId;
+		}
+		if ( methodId < 0 || methodId < registered && signatures[methodId] != null ) {
+			return false;
+		}
+		ensureCapacity( methodId + 1 );
+		signatures[methodId] = methodSignature;
+		extras[methodId] = extra;
+		IDS.put( Arrays.asList( methodSignature, extra ), methodId );
+		// always written, which also publishes a claim below the number of registered methods
+		registered = Math.max( registered, methodId + 1 );
+		return true;
+	}
+
+	/**
+	 * Makes sure newly registered methods get an ID of at least the given value, leaving
+	 * the IDs below it to be claimed
+	 * @param methodId
+	 */
+	public static synchronized void reserve( final int methodId ) {
+		if ( methodId > registered ) {
+			ensureCapacity( methodId );
+			registered = methodId;
+		}
+	}
+
+	/**
+	 * Grows the method arrays to hold at least the given number of methods
+	 * @param capacity
+	 */
+	private static void ensureCapacity( final int capacity ) {
+		if ( capacity > signatures.length ) {
+			final int newCapacity = Math.max( capacity, signatures.length * 2 );
+			signatures = Arrays.copyOf( signatures, newCapacity );
+			extras = Arrays.copyOf( extras, newCapacity );
+		}
+	}
+
+	/**
+	 * Gets the number of registered methods (Including unclaimed IDs below reserved IDs)
+	 * @return
+	 */
+	public static int size() {
+		return registered;
+	}
+
+	/**
+	 * Gets the method signature of the given method ID
+	 * @param methodId
+	 * @return the method signature or null if the ID was not registered
+	 */
+	public static String getMethodSignature( final int methodId ) {
+		if ( methodId < 0 || methodId >= registered ) {
+			return null;
+		}
+		return signatures[methodId];
+	}
+
+	/**
+	 * Gets the extra information of the given method ID
+	 * @param methodId
+	 * @return
+	 */
+	public static String getExtra( final int methodId ) {
+		if ( methodId < 0 || methodId >= registered ) {
+			return null;
+		}
+		return extras[methodId];
+	}
+}
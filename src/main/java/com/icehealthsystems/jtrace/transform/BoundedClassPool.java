@@ -0,0 +1,86 @@
+package com.icehealthsystems.jtrace.transform;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javassist.ClassPool;
+import javassist.CtClass;
+
+/**
+ * A class pool which only caches the most recently used classes. A plain ClassPool keeps
+ * every CtClass it ever loaded (every parameter type of every transformed method) for as
+ * long as the pool lives. Modified classes are never evicted since javassist expects to
+ * find them in the pool until they are written out and detached.
+ *
+ * @author Matt MacLean
+ */
+public class BoundedClassPool extends ClassPool {
+	/**
+	 * Default maximum number of cached classes
+	 */
+	public static final int DEFAULT_MAX_CACHED_CLASSES = 1000;
+
+	/**
+	 * Cached classes in least recently used order
+	 */
+	private final transient Map<String, CtClass> cachedClasses;
+
+	/**
+	 * Creates a pool caching up to the default maximum number of classes
+	 */
+	public BoundedClassPool() {
+		this( DEFAULT_MAX_CACHED_CLASSES );
+	}
+
+	/**
+	 * Creates a pool caching up to the given number of classes
+	 * @param maxCachedClasses
+	 */
+	public BoundedClassPool( final int maxCachedClasses ) {
+		super();
+		this.cachedClasses = new LinkedHashMap<String, CtClass>( 16, 0.75f, true ) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry<String, CtClass> eldest ) {
+				return size() > maxCachedClasses && !eldest.getValue().isModified();
+			}
+		};
+	}
+
+	/**
+	 * Gets a cached class
+	 */
+	@Override
+	protected synchronized CtClass getCached( final String classname ) {
+		final CtClass cached = cachedClasses.get( classname );
+		if ( cached != null ) {
+			return cached;
+		}
+		// primitive types are cached by the ClassPool constructor
+		return super.getCached( classname );
+	}
+
+	/**
+	 * Caches a class
+	 */
+	@Override
+	protected synchronized void cacheCtClass( final String classname, final CtClass ctClass, final boolean dynamic ) {
+		cachedClasses.put( classname, ctClass );
+	}
+
+	/**
+	 * Removes a cached class
+	 */
+	@Override
+	protected synchronized CtClass removeCached( final String classname ) {
+		return cachedClasses.remove( classname );
+	}
+
+	/**
+	 * Gets the number of cached classes
+	 * @return
+	 */
+	public synchronized int getCachedClassCount() {
+		return cachedClasses.size();
+	}
+}
@@ -0,0 +1,330 @@
+package com.icehealthsystems.jtrace.transform;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads just the constant pool and method table of a raw class file to decide if any of
+ * it's methods or constructors would be instrumented, so classes which would come out of
+ * the transformer unchanged (interfaces, annotations, classes with only abstract, native
+ * or empty methods) never have to be parsed into a Javassist CtClass. Uses the same notion
+ * of "empty" as {@link javassist.CtBehavior#isEmpty()}.
+ *
+ * @author Matt MacLean
+ */
+public final class ClassFileScanner {
+	/**
+	 * Class file magic number
+	 */
+	private static final int MAGIC = 0xCAFEBABE;
+
+	/**
+	 * Constant pool tag of a UTF8 constant
+	 */
+	private static final int CONSTANT_UTF8 = 1;
+
+	/**
+	 * Constant pool tag of an integer constant
+	 */
+	private static final int CONSTANT_INTEGER = 3;
+
+	/**
+	 * Constant pool tag of a float constant
+	 */
+	private static final int CONSTANT_FLOAT = 4;
+
+	/**
+	 * Constant pool tag of a long constant
+	 */
+	private static final int CONSTANT_LONG = 5;
+
+	/**
+	 * Constant pool tag of a double constant
+	 */
+	private static final int CONSTANT_DOUBLE = 6;
+
+	/**
+	 * Constant pool tag of a class constant
+	 */
+	private static final int CONSTANT_CLASS = 7;
+
+	/**
+	 * Constant pool tag of a string constant
+	 */
+	private static final int CONSTANT_STRING = 8;
+
+	/**
+	 * Constant pool tag of a field ref constant
+	 */
+	private static final int CONSTANT_FIELDREF = 9;
+
+	/**
+	 * Constant pool tag of a method ref constant
+	 */
+	private static final int CONSTANT_METHODREF = 10;
+
+	/**
+	 * Constant pool tag of an interface method ref constant
+	 */
+	private static final int CONSTANT_IMETHODREF = 11;
+
+	/**
+	 * Constant pool tag of a name and type constant
+	 */
+	private static final int CONSTANT_NAMETYPE = 12;
+
+	/**
+	 * Constant pool tag of a method handle constant
+	 */
+	private static final int CONSTANT_METHODHANDLE = 15;
+
+	/**
+	 * Constant pool tag of a method type constant
+	 */
+	private static final int CONSTANT_METHODTYPE = 16;
+
+	/**
+	 * Constant pool tag of a dynamic constant
+	 */
+	private static final int CONSTANT_DYNAMIC = 17;
+
+	/**
+	 * Constant pool tag of an invoke dynamic constant
+	 */
+	private static final int CONSTANT_INVOKEDYNAMIC = 18;
+
+	/**
+	 * Constant pool tag of a module constant
+	 */
+	private static final int CONSTANT_MODULE = 19;
+
+	/**
+	 * Constant pool tag of a package constant
+	 */
+	private static final int CONSTANT_PACKAGE = 20;
+
+	/**
+	 * aload_0 opcode
+	 */
+	private static final int OP_ALOAD_0 = 0x2a;
+
+	/**
+	 * invokespecial opcode
+	 */
+	private static final int OP_INVOKESPECIAL = 0xb7;
+
+	/**
+	 * return opcode
+	 */
+	private static final int OP_RETURN = 0xb1;
+
+	/**
+	 * Utility class
+	 */
+	private ClassFileScanner() {
+		// NO OP
+	}
+
+	/**
+	 * Checks if the given class file has any method or constructor which would be instrumented
+	 * @param classBytes
+	 * @return false if there is nothing to instrument or the bytes are not a class file, true
+	 * if there is or if the class file could not be fully scanned
+	 */
+	public static boolean needsInstrumentation( final byte[] classBytes ) {
+		final Set<String> methods = findInstrumentableMethods( classBytes );
+		return methods == null || !methods.isEmpty();
+	}
+
+	/**
+	 * Finds the methods and constructors of the given class file which would be instrumented
+	 * @param classBytes
+	 * @return the name and descriptor (Ex: method(Ljava/lang/String;)V) of each method, none if
+	 * the bytes are not a class file, or null if the class file could not be fully scanned
+	 */
+	@SuppressWarnings( "PMD.ReturnEmptyCollectionRatherThanNull" )
+	public static Set<String> findInstrumentableMethods( final byte[] classBytes ) {
+		final Set<String> methods = new HashSet<>();
+		try {
+			final ByteBuffer buffer = ByteBuffer.wrap( classBytes );
+			if ( buffer.remaining() < 4 || buffer.getInt() != MAGIC ) {
+				return methods;
+			}
+			buffer.getInt(); // minor and major version
+
+			final int[] offsets = readConstantPool( buffer );
+
+			buffer.getShort(); // access flags
+			buffer.getShort(); // this class
+			final int superClass = buffer.getShort() & 0xffff;
+			skip( buffer, ( buffer.getShort() & 0xffff ) * 2 ); // interfaces
+
+			// fields
+			final int fieldCount = buffer.getShort() & 0xffff;
+			for ( int i = 0; i < fieldCount; i++ ) {
+				skip( buffer, 6 );
+				skipAttributes( buffer );
+			}
+
+			// methods
+			final int methodCount = buffer.getShort() & 0xffff;
+			for ( int i = 0; i < methodCount; i++ ) {
+				buffer.getShort(); // access flags
+				final String name = readUtf8( buffer, offsets, buffer.getShort() & 0xffff );
+				final String descriptor = readUtf8( buffer, offsets, buffer.getShort() & 0xffff );
+				final int attributeCount = buffer.getShort() & 0xffff;
+				for ( int j = 0; j < attributeCount; j++ ) {
+					final String attributeName = readUtf8( buffer, offsets, buffer.getShort() & 0xffff );
+					final int length = buffer.getInt();
+					if ( "Code".equals( attributeName ) && !"<clinit>".equals( name ) && !isEmpty( buffer, offsets, name, superClass ) ) {
+						methods.add( name + descriptor );
+					}
+					skip( buffer, length );
+				}
+			}
+			return methods;
+		}
+		catch ( BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex ) {
+			// let the instrumenter decide what to do with a class file this scanner does not understand
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the offset of every constant pool entry, leaving the buffer positioned after the pool
+	 * @param buffer
+	 * @return the offsets of the entries indexed by constant pool index
+	 */
+	private static int[] readConstantPool( final ByteBuffer buffer ) {
+		final int count = buffer.getShort() & 0xffff;
+		final int[] offsets = new int[count];
+		for ( int i = 1; i < count; i++ ) {
+			offsets[i] = buffer.position();
+			final int tag = buffer.get();
+			switch ( tag ) {
+				case CONSTANT_UTF8:
+					skip( buffer, buffer.getShort() & 0xffff );
+					break;
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:
+				case CONSTANT_METHODTYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					skip( buffer, 2 );
+					break;
+				case CONSTANT_METHODHANDLE:
+					skip( buffer, 3 );
+					break;
+				case CONSTANT_INTEGER:
+				case CONSTANT_FLOAT:
+				case CONSTANT_FIELDREF:
+				case CONSTANT_METHODREF:
+				case CONSTANT_IMETHODREF:
+				case CONSTANT_NAMETYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKEDYNAMIC:
+					skip( buffer, 4 );
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					// 8 byte constants take up two entries
+					skip( buffer, 8 );
+					i++;
+					break;
+				default:
+					throw new IllegalArgumentException( "Unknown constant pool tag " + tag );
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * Checks if the Code attribute the buffer is positioned at is empty, the buffer is left
+	 * positioned at the start of the Code attribute.
+	 * @param buffer
+	 * @param offsets
+	 * @param name
+	 * @param superClass
+	 * @return
+	 */
+	private static boolean isEmpty( final ByteBuffer buffer, final int[] offsets, final String name, final int superClass ) {
+		final int start = buffer.position();
+		buffer.getInt(); // max stack and locals
+		final int codeLength = buffer.getInt();
+		final int code = buffer.position();
+		buffer.position( start );
+
+		// just a return
+		if ( codeLength == 1 ) {
+			return ( buffer.get( code ) & 0xff ) == OP_RETURN;
+		}
+
+		// a constructor only calling the no argument super constructor
+		return "<init>".equals( name ) && codeLength == 5
+			&& ( buffer.get( code ) & 0xff ) == OP_ALOAD_0
+			&& ( buffer.get( code + 1 ) & 0xff ) == OP_INVOKESPECIAL
+			&& ( buffer.get( code + 4 ) & 0xff ) == OP_RETURN
+			&& isSuperConstructor( buffer, offsets, buffer.getShort( code + 2 ) & 0xffff, superClass );
+	}
+
+	/**
+	 * Checks if the given method ref is the no argument constructor of the super class
+	 * @param buffer
+	 * @param offsets
+	 * @param methodRef
+	 * @param superClass
+	 * @return
+	 */
+	private static boolean isSuperConstructor( final ByteBuffer buffer, final int[] offsets, final int methodRef, final int superClass ) {
+		if ( buffer.get( offsets[methodRef] ) != CONSTANT_METHODREF ) {
+			return false;
+		}
+		final int classIndex = buffer.getShort( offsets[methodRef] + 1 ) & 0xffff;
+		final int nameType = buffer.getShort( offsets[methodRef] + 3 ) & 0xffff;
+		final String className = readUtf8( buffer, offsets, buffer.getShort( offsets[classIndex] + 1 ) & 0xffff );
+		final String superClassName = readUtf8( buffer, offsets, buffer.getShort( offsets[superClass] + 1 ) & 0xffff );
+		return className.equals( superClassName )
+			&& "<init>".equals( readUtf8( buffer, offsets, buffer.getShort( offsets[nameType] + 1 ) & 0xffff ) )
+			&& "()V".equals( readUtf8( buffer, offsets, buffer.getShort( offsets[nameType] + 3 ) & 0xffff ) );
+	}
+
+	/**
+	 * Reads a UTF8 constant
+	 * @param buffer
+	 * @param offsets
+	 * @param index
+	 * @return
+	 */
+	private static String readUtf8( final ByteBuffer buffer, final int[] offsets, final int index ) {
+		final int offset = offsets[index];
+		if ( buffer.get( offset ) != CONSTANT_UTF8 ) {
+			throw new IllegalArgumentException( "Not a UTF8 constant: " + index );
+		}
+		final int length = buffer.getShort( offset + 1 ) & 0xffff;
+		return new String( buffer.array(), offset + 3, length, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Skips over a table of attributes
+	 * @param buffer
+	 */
+	private static void skipAttributes( final ByteBuffer buffer ) {
+		final int attributeCount = buffer.getShort() & 0xffff;
+		for ( int i = 0; i < attributeCount; i++ ) {
+			buffer.getShort(); // name
+			skip( buffer, buffer.getInt() );
+		}
+	}
+
+	/**
+	 * Skips the given number of bytes
+	 * @param buffer
+	 * @param length
+	 */
+	private static void skip( final ByteBuffer buffer, final int length ) {
+		buffer.position( buffer.position() + length );
+	}
+}
@@ -0,0 +1,196 @@
+package com.icehealthsystems.jtrace.transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches class names against a set of regex patterns which are compiled once. Patterns
+ * which are only a literal class name or a literal prefix followed by ".*" (Ex: com\.foo\..*)
+ * are matched by walking a prefix trie, all other patterns are matched with a precompiled
+ * {@link Pattern}. A class name matches if it fully matches any of the patterns, the same
+ * as {@link String#matches(String)}.
+ *
+ * @author Matt MacLean
+ */
+public class ClassNameMatcher {
+	/**
+	 * Characters which have a special meaning when not escaped in a regex
+	 */
+	private static final String REGEX_META_CHARS = ".[]{}()*+?^$|\\";
+
+	/**
+	 * Root of the literal prefix trie
+	 */
+	private final transient Node root = new Node();
+
+	/**
+	 * Compiled patterns which are not literal prefixes
+	 */
+	private final transient Pattern[] patterns;
+
+	/**
+	 * Compiles the given patterns
+	 * @param regexes
+	 */
+	public ClassNameMatcher( final String... regexes ) {
+		final List<Pattern> compiled = new ArrayList<>();
+		for ( final String regex : regexes ) {
+			if ( !addLiteral( regex ) ) {
+				compiled.add( Pattern.compile( regex ) );
+			}
+		}
+		this.patterns = compiled.toArray( new Pattern[compiled.size()] );
+	}
+
+	/**
+	 * Adds the given regex to the trie if it is a literal class name or a literal prefix
+	 * @param regex
+	 * @return false if the regex is not a literal class name or prefix
+	 */
+	private boolean addLiteral( final String regex ) {
+		int start = 0;
+		int end = regex.length();
+
+		// anchors make no difference when the whole class name must match
+		if ( start < end && regex.charAt( start ) == '^' ) {
+			start++;
+		}
+		if ( end > start && regex.charAt( end - 1 ) == '$' && !isEscaped( regex, end - 1 ) ) {
+			end--;
+		}
+
+		boolean prefix = false;
+		if ( end - start >= 2 && regex.startsWith( ".*", end - 2 ) && !isEscaped( regex, end - 2 ) ) {
+			prefix = true;
+			end -= 2;
+		}
+
+		final StringBuilder literal = new StringBuilder( end - start );
+		for ( int i = start; i < end; i++ ) {
+			char chr = regex.charAt( i );
+			if ( chr == '\\' ) {
+				// only an escaped non-alphanumeric character is a literal
+				if ( i + 1 == end || Character.isLetterOrDigit( regex.charAt( i + 1 ) ) ) {
+					return false;
+				}
+				chr = regex.charAt( ++i );
+			}
+			else if ( REGEX_META_CHARS.indexOf( chr ) >= 0 ) {
+				return false;
+			}
+			literal.append( chr );
+		}
+
+		Node node = root;
+		for ( int i = 0; i < literal.length(); i++ ) {
+			node = node.getOrCreateChild( literal.charAt( i ) );
+		}
+		if ( prefix ) {
+			node.prefixEnd = true;
+		}
+		else {
+			node.exactEnd = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the character at the given index is escaped with a backslash
+	 * @param regex
+	 * @param index
+	 * @return
+	 */
+	private static boolean isEscaped( final String regex, final int index ) {
+		int backslashes = 0;
+		for ( int i = index - 1; i >= 0 && regex.charAt( i ) == '\\'; i-- ) {
+			backslashes++;
+		}
+		return backslashes % 2 == 1;
+	}
+
+	/**
+	 * Checks if the given class name matches any of the patterns
+	 * @param className
+	 * @return
+	 */
+	public boolean matches( final String className ) {
+		Node node = root;
+		for ( int i = 0; node != null; i++ ) {
+			if ( node.prefixEnd ) {
+				return true;
+			}
+			if ( i == className.length() ) {
+				if ( node.exactEnd ) {
+					return true;
+				}
+				break;
+			}
+			node = node.getChild( className.charAt( i ) );
+		}
+
+		for ( final Pattern pattern : patterns ) {
+			if ( pattern.matcher( className ).matches() ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A node of the literal prefix trie
+	 */
+	private static final class Node {
+		/**
+		 * Characters of the child nodes
+		 */
+		private transient char[] keys = new char[0];
+
+		/**
+		 * Child nodes
+		 */
+		private transient Node[] children = new Node[0];
+
+		/**
+		 * If any class name starting with the characters leading to this node matches
+		 */
+		private transient boolean prefixEnd;
+
+		/**
+		 * If the class name made up of the characters leading to this node matches
+		 */
+		private transient boolean exactEnd;
+
+		/**
+		 * Gets the child node of the given character
+		 * @param chr
+		 * @return the child node or null if there is none
+		 */
+		private Node getChild( final char chr ) {
+			for ( int i = 0; i < keys.length; i++ ) {
+				if ( keys[i] == chr ) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Gets (creating if needed) the child node of the given character
+		 * @param chr
+		 * @return
+		 */
+		private Node getOrCreateChild( final char chr ) {
+			Node child = getChild( chr );
+			if ( child == null ) {
+				child = new Node();
+				keys = Arrays.copyOf( keys, keys.length + 1 );
+				children = Arrays.copyOf( children, children.length + 1 );
+				keys[keys.length - 1] = chr;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.icehealthsystems.jtrace.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import com.icehealthsystems.jtrace.runtime.LogUtils;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
+
+/**
+ * An on-disk cache of instrumented class files, so JVMs restarting with the same classes
+ * and agent configuration read the instrumented classes instead of instrumenting them again.
+ * Entries are keyed by a hash of the original class file and the agent configuration.
+ * <p>
+ * Instrumented classes have the IDs of their methods built in, so each entry also holds
+ * the IDs it's methods were registered with, which are claimed in the {@link MethodRegistry}
+ * when the entry is read. An entry whose IDs are already taken in this JVM is a miss, the
+ * class is instrumented again and the entry replaced. To keep that rare the highest method
+ * ID ever cached is kept in the cache directory and newly registered methods get IDs above it.
+ *
+ * @author Matt MacLean
+ */
+public class InstrumentedClassCache {
+	/**
+	 * Cache entry file format marker and version
+	 */
+	private static final int MAGIC = 0x4A544301;
+
+	/**
+	 * Name of the file holding the ID newly registered methods start at
+	 */
+	private static final String RESERVED_IDS_FILE = "reserved-method-ids";
+
+	/**
+	 * Cache entry file extension
+	 */
+	private static final String ENTRY_EXTENSION = ".jtc";
+
+	/**
+	 * The cache directory
+	 */
+	private final transient Path directory;
+
+	/**
+	 * The agent configuration the cached classes were instrumented with
+	 */
+	private final transient byte[] configKey;
+
+	/**
+	 * Creates a cache in the given directory (created if it does not exist) and reserves the
+	 * method IDs already used by it's entries
+	 * @param directory
+	 * @param configKey the agent version and configuration which affects how classes are instrumented
+	 * @throws IOException
+	 */
+	public InstrumentedClassCache( final File directory, final String configKey ) throws IOException {
+		this.directory = Files.createDirectories( directory.toPath() );
+		this.configKey = configKey.getBytes( StandardCharsets.UTF_8 );
+		MethodRegistry.reserve( updateReservedIds( 0 ) );
+	}
+
+	/**
+	 * Gets the cached instrumented version of the given class file and claims it's method IDs
+	 * @param classBytes the original class file
+	 * @return the instrumented class file, or null if it is not cached or the cached method IDs
+	 * are already used by other methods
+	 */
+	public byte[] get( final byte[] classBytes ) {
+		try ( FileChannel channel = FileChannel.open( getEntryPath( classBytes ), StandardOpenOption.READ ) ) {
+			final ByteBuffer entry = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+			if ( entry.getInt() != MAGIC ) {
+				return null;
+			}
+			final int methodCount = entry.getInt();
+			for ( int i = 0; i < methodCount; i++ ) {
+				final int methodId = entry.getInt();
+				if ( !MethodRegistry.claim( methodId, readString( entry ), null ) ) {
+					return null;
+				}
+			}
+			final byte[] instrumentedBytes = new byte[entry.getInt()];
+			entry.get( instrumentedBytes );
+			return instrumentedBytes;
+		}
+		catch ( NoSuchFileException ex ) {
+			return null;
+		}
+		catch ( IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex ) {
+			LogUtils.println( "Error reading cached class: " + ex.getMessage() );
+			return null;
+		}
+	}
+
+	/**
+	 * Caches the instrumented version of the given class file
+	 * @param classBytes the original class file
+	 * @param instrumentedBytes the instrumented class file
+	 * @param className the internal class name (Ex: some/package/SomeClass)
+	 * @param normClassName the class name used in method signatures
+	 * @param methods the name and descriptor of each instrumented method
+	 */
+	public void put( final byte[] classBytes, final byte[] instrumentedBytes, final String className, final String normClassName, final Set<String> methods ) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream( instrumentedBytes.length + methods.size() * 64 );
+			final DataOutputStream out = new DataOutputStream( bytes );
+			out.writeInt( MAGIC );
+			out.writeInt( methods.size() );
+			int maxMethodId = -1;
+			for ( final String method : methods ) {
+				// the same signature the instrumenters registered the method with
+				final int nameEnd = method.indexOf( '(' );
+				final int methodId = MethodRegistry.register( MethodSignatures.fromDescriptor( normClassName, className, method.substring( 0, nameEnd ), method.substring( nameEnd ) ), null );
+				maxMethodId = Math.max( maxMethodId, methodId );
+				out.writeInt( methodId );
+				writeString( out, MethodRegistry.getMethodSignature( methodId ) );
+			}
+			out.writeInt( instrumentedBytes.length );
+			out.write( instrumentedBytes );
+			out.flush();
+
+			// written to a temporary file first so other JVMs never read a partial entry
+			final Path temp = Files.createTempFile( directory, "entry", ".tmp" );
+			try {
+				Files.write( temp, bytes.toByteArray() );
+				Files.move( temp, getEntryPath( classBytes ), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			finally {
+				Files.deleteIfExists( temp );
+			}
+
+			updateReservedIds( maxMethodId + 1 );
+		}
+		catch ( IOException ex ) {
+			LogUtils.println( "Error caching class " + normClassName + ": " + ex.getMessage() );
+		}
+	}
+
+	/**
+	 * Gets the path of the cache entry of the given class file
+	 * @param classBytes
+	 * @return
+	 */
+	protected Path getEntryPath( final byte[] classBytes ) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+			digest.update( configKey );
+			final byte[] hash = digest.digest( classBytes );
+			final StringBuilder name = new StringBuilder( hash.length * 2 + ENTRY_EXTENSION.length() );
+			for ( final byte value : hash ) {
+				name.append( Character.forDigit( ( value >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( value & 0xf, 16 ) );
+			}
+			return directory.resolve( name.append( ENTRY_EXTENSION ).toString() );
+		}
+		catch ( NoSuchAlgorithmException ex ) {
+			// every java platform is required to support SHA-1
+			throw new IllegalStateException( ex );
+		}
+	}
+
+	/**
+	 * Raises the ID newly registered methods start at, which is shared between all JVMs using the
+	 * cache. Synchronized since file locks are held by the whole JVM.
+	 * @param methodId
+	 * @return the ID newly registered methods start at
+	 * @throws IOException
+	 */
+	private synchronized int updateReservedIds( final int methodId ) throws IOException {
+		try ( FileChannel channel = FileChannel.open( directory.resolve( RESERVED_IDS_FILE ), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE ); FileLock lock = channel.lock() ) {
+			final ByteBuffer buffer = ByteBuffer.allocate( 4 );
+			final int reserved = channel.read( buffer, 0 ) == 4 ? buffer.getInt( 0 ) : 0;
+			if ( methodId > reserved ) {
+				buffer.putInt( 0, methodId );
+				buffer.rewind();
+				channel.write( buffer, 0 );
+				return methodId;
+			}
+			return reserved;
+		}
+	}
+
+	/**
+	 * Reads a length prefixed UTF8 string
+	 * @param buffer
+	 * @return
+	 */
+	private static String readString( final ByteBuffer buffer ) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Writes a length prefixed UTF8 string
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	private static void writeString( final DataOutputStream out, final String value ) throws IOException {
+		final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+}
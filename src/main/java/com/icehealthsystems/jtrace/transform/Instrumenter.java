@@ -0,0 +1,22 @@
+package com.icehealthsystems.jtrace.transform;
+
+import java.util.Set;
+
+/**
+ * A bytecode instrumentation backend which inserts the method execution probes
+ * into the methods and constructors of a class.
+ *
+ * @author Matt MacLean
+ */
+public interface Instrumenter {
+	/**
+	 * Instruments the methods and constructors of the given class file
+	 * @param loader the class loader defining the class
+	 * @param normClassName the class name used in method signatures
+	 * @param classBytes the class file
+	 * @param methods the name and descriptor of each method to instrument as found by the
+	 * {@link ClassFileScanner}, or null if the instrumenter should decide for itself
+	 * @return the instrumented class file, or the given class file if it could not be instrumented
+	 */
+	byte[] instrument( ClassLoader loader, String normClassName, byte[] classBytes, Set<String> methods );
+}
@@ -0,0 +1,143 @@
+package com.icehealthsystems.jtrace.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import com.icehealthsystems.jtrace.runtime.LogUtils;
+import com.icehealthsystems.jtrace.runtime.methods.MethodExecutionStack;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+/**
+ * Instruments classes by compiling the probes from Java source with Javassist
+ *
+ * @author Matt MacLean
+ */
+public class JavassistInstrumenter implements Instrumenter {
+	/**
+	 * Profiling class name reference
+	 */
+	private static final String PROFILING_CLASS = MethodExecutionStack.class.getName();
+
+	/**
+	 * Map of class loaders to their class pools. Weakly keyed so the pool (and it's cached
+	 * classes) goes away along with a class loader which is no longer used, like the class
+	 * loader of an undeployed webapp.
+	 */
+	protected final transient Map<ClassLoader, ClassPool> classPools = Collections.synchronizedMap( new WeakHashMap<>() );
+
+	/**
+	 * Instruments the class using the class pool of it's class loader. Javassist decides
+	 * which methods are empty by itself, so the scanned methods are not used.
+	 */
+	@Override
+	public byte[] instrument( final ClassLoader loader, final String normClassName, final byte[] classBytes, final Set<String> methods ) {
+		// make sure a class pool exists for the specified class loader
+		final ClassPool classPool = classPools.computeIfAbsent( loader, key -> {
+			final ClassPool pool = new BoundedClassPool();
+			pool.appendClassPath( new LoaderClassPath( key ) );
+			return pool;
+		} );
+		return transform( classPool, normClassName, classBytes );
+	}
+
+	/**
+	 * Transforms the given class for method profiling
+	 * @param classPool
+	 * @param normClassName
+	 * @param classfileBuffer
+	 * @return
+	 */
+	protected byte[] transform( final ClassPool classPool, final String normClassName, final byte[] classfileBuffer ) {
+		try {
+			LogUtils.println( "Transforming: " + normClassName );
+
+			// convert byte[] to a CtClass
+			final ByteArrayInputStream bin = new ByteArrayInputStream( classfileBuffer );
+			final CtClass ctClass = classPool.makeClass( bin );
+
+			// transform all constructors
+			final CtConstructor[] ctConstructors = ctClass.getDeclaredConstructors();
+			for ( final CtConstructor constructor : ctConstructors ) {
+				transformBehavior( normClassName, constructor );
+			}
+
+			// transform all class methods
+			final CtMethod[] ctMethods = ctClass.getDeclaredMethods();
+			for ( final CtMethod method : ctMethods ) {
+				transformBehavior( normClassName, method );
+			}
+
+			// get the net bytecode
+			final byte[] newByteCode = ctClass.toBytecode();
+
+			// detach
+			ctClass.detach();
+
+			return newByteCode;
+		}
+		catch ( IOException | CannotCompileException ex ) {
+			LogUtils.println( "Error transforming " + normClassName );
+			ex.printStackTrace( System.out );
+		}
+		return classfileBuffer;
+	}
+
+	/**
+	 * Transforms the given behavior (constructor or method)
+	 * @param normClassName
+	 * @param method
+	 */
+	protected void transformBehavior( final String normClassName, final CtBehavior method ) {
+		// skip empty methods
+		if ( method.isEmpty() ) {
+			return;
+		}
+
+		String methodSignature;
+		try {
+			// determine the method signature (Ex: some.package.SomeClass.someMethod(String, long, boolean))
+			final CtClass[] params = method.getParameterTypes();
+			final String[] paramTypeNames = new String[params.length];
+			for ( int i = 0; i < params.length; i++ ) {
+				paramTypeNames[i] = params[i].getName();
+			}
+			methodSignature = MethodSignatures.format( normClassName, method.getName(), paramTypeNames );
+		}
+		catch ( NotFoundException ex ) {
+			LogUtils.println( "Error transforming a method in " + normClassName );
+			ex.printStackTrace( System.out );
+			return;
+		}
+
+		// the probes only pass the registered method ID
+		final int methodId = MethodRegistry.register( methodSignature, null );
+
+		try {
+			final StringBuilder code = new StringBuilder( 100 );
+			code.append( '{' ).append( PROFILING_CLASS ).append( ".getForThread().methodExecutionStarting(" ).append( methodId ).append( ");}" );
+			method.insertBefore( code.toString() );
+
+			code.setLength( 0 );
+			code.append( '{' ).append( PROFILING_CLASS ).append( ".getForThread().methodExecutionEnded(" ).append( methodId ).append( ");}" );
+			// as finally, so the execution also ends when the method throws
+			method.insertAfter( code.toString(), true );
+		}
+		catch ( CannotCompileException ex ) {
+			LogUtils.println( "Error transforming a method: " + methodSignature );
+			ex.printStackTrace( System.out );
+			return;
+		}
+
+	}
+}
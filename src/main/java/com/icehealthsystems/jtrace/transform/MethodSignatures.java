@@ -0,0 +1,64 @@
+package com.icehealthsystems.jtrace.transform;
+
+import org.objectweb.asm.Type;
+
+/**
+ * Builds the method signatures which profiled methods are reported with, so every
+ * instrumentation backend reports the same method the same way.
+ *
+ * @author Matt MacLean
+ */
+public final class MethodSignatures {
+	/**
+	 * Utility class
+	 */
+	private MethodSignatures() {
+		// NO OP
+	}
+
+	/**
+	 * Builds a method signature (Ex: some.package.SomeClass.someMethod(String, long, boolean))
+	 * @param normClassName the class name
+	 * @param methodName the method name, or the simple class name for constructors
+	 * @param paramTypeNames the fully qualified parameter type names
+	 * @return
+	 */
+	public static String format( final String normClassName, final String methodName, final String... paramTypeNames ) {
+		final StringBuilder signature = new StringBuilder();
+		signature.append( normClassName ).append( '.' ).append( methodName ).append( '(' );
+		for ( int i = 0; i < paramTypeNames.length; i++ ) {
+			signature.append( getSimpleName( paramTypeNames[i] ) );
+			if ( i < paramTypeNames.length - 1 ) {
+				signature.append( ", " );
+			}
+		}
+		signature.append( ')' );
+		return signature.toString();
+	}
+
+	/**
+	 * Builds the method signature of a method from it's descriptor
+	 * @param normClassName the class name
+	 * @param className the declaring class name (Ex: some/package/Outer$Inner), which constructors are named after
+	 * @param methodName the method name
+	 * @param descriptor the method descriptor (Ex: (Ljava/lang/String;J)V)
+	 * @return
+	 */
+	public static String fromDescriptor( final String normClassName, final String className, final String methodName, final String descriptor ) {
+		final Type[] params = Type.getArgumentTypes( descriptor );
+		final String[] paramTypeNames = new String[params.length];
+		for ( int i = 0; i < params.length; i++ ) {
+			paramTypeNames[i] = params[i].getClassName();
+		}
+		return format( normClassName, "<init>".equals( methodName ) ? getSimpleName( className ) : methodName, paramTypeNames );
+	}
+
+	/**
+	 * Gets the name of a class without it's package
+	 * @param className a fully qualified class name, using either . or / as the package separator
+	 * @return
+	 */
+	public static String getSimpleName( final String className ) {
+		return className.substring( Math.max( className.lastIndexOf( '.' ), className.lastIndexOf( '/' ) ) + 1 );
+	}
+}
@@ -1,25 +1,19 @@
 package com.icehealthsystems.jtrace.transform;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicReference;
+import com.icehealthsystems.jtrace.runtime.Agent;
 import com.icehealthsystems.jtrace.runtime.Config;
 import com.icehealthsystems.jtrace.runtime.LogUtils;
-import com.icehealthsystems.jtrace.runtime.methods.MethodExecutionStack;
-import javassist.CannotCompileException;
-import javassist.ClassPool;
-import javassist.CtBehavior;
-import javassist.CtClass;
-import javassist.CtConstructor;
-import javassist.CtMethod;
-import javassist.LoaderClassPath;
-import javassist.NotFoundException;
 
 /**
  * Class file transformer for profiling method executions
@@ -28,40 +22,91 @@ import javassist.NotFoundException;
  */
 public class MethodTransformer implements ClassFileTransformer {
 	/**
-	 * Profiling class name reference
+	 * Prefix of the profiler's own classes, which are never profiled
 	 */
-	private static final String PROFILING_CLASS = MethodExecutionStack.class.getName();
+	private static final String PROFILER_PACKAGE = "com.icehealthsystems.jtrace.";
 
 	/**
 	 * Included class regex patterns
 	 */
-	private final transient String[] includes;
+	private final transient ClassNameMatcher includes;
 
 	/**
 	 * Excluded class regex patterns
 	 */
-	private final transient String[] excludes;
+	private final transient ClassNameMatcher excludes;
 
 	/**
-	 * Map of class loaders to their class pools
+	 * Map of class loaders to the names of their classes being profiled. Weakly keyed so
+	 * the names go away along with a class loader which is no longer used.
 	 */
-	private final transient ConcurrentMap<ClassLoader, ClassPool> classPools = new ConcurrentHashMap<>();
+	protected final transient Map<ClassLoader, Set<String>> profilingClasses = Collections.synchronizedMap( new WeakHashMap<>() );
 
 	/**
-	 * Map of classes being profiled.
+	 * The instrumentation backend
 	 */
-	private final transient ConcurrentMap<String, ClassPool> profilingClasses = new ConcurrentHashMap<>();
+	protected final transient Instrumenter instrumenter;
+
+	/**
+	 * The cache of instrumented classes, or null if instrumented classes are not cached
+	 */
+	protected final transient InstrumentedClassCache cache;
+
+	/**
+	 * Is method profiling enabled, classes are passed through as is while it is not
+	 */
+	@SuppressWarnings( "PMD.AvoidUsingVolatile" )
+	private transient volatile boolean enabled;
 
 	/**
 	 * Creates a new method profiling transformer
 	 * @param classFilterRegex
 	 */
 	public MethodTransformer() {
-		this.includes = Config.getInstance().getIncludesClassesRegex();
-		this.excludes = Config.getInstance().getExcludesClassesRegex();
+		this.enabled = Config.getInstance().isMethodProfilingEnabled();
+
+		final String[] includesRegex = Config.getInstance().getIncludesClassesRegex();
+		final String[] excludesRegex = Config.getInstance().getExcludesClassesRegex();
+		this.includes = new ClassNameMatcher( includesRegex );
+		this.excludes = new ClassNameMatcher( excludesRegex );
+
+		LogUtils.println( "Including classes: " + Arrays.toString( includesRegex ) );
+		LogUtils.println( "Excluding classes: " + Arrays.toString( excludesRegex ) );
 
-		LogUtils.println( "Including classes: " + Arrays.toString( includes ) );
-		LogUtils.println( "Excluding classes: " + Arrays.toString( excludes ) );
+		final String backend = Config.getInstance().getBackend();
+		if ( "asm".equals( backend ) ) {
+			this.instrumenter = new AsmInstrumenter();
+		}
+		else {
+			this.instrumenter = new JavassistInstrumenter();
+		}
+		LogUtils.println( "Instrumenting with: " + backend );
+
+		this.cache = createCache( backend, includesRegex, excludesRegex );
+	}
+
+	/**
+	 * Creates the cache of instrumented classes if a cache directory is configured
+	 * @param backend
+	 * @param includesRegex
+	 * @param excludesRegex
+	 * @return the cache or null if instrumented classes should not be cached
+	 */
+	private static InstrumentedClassCache createCache( final String backend, final String[] includesRegex, final String[] excludesRegex ) {
+		final String cacheDir = Config.getInstance().getCacheDir();
+		if ( cacheDir == null ) {
+			return null;
+		}
+		try {
+			final String configKey = Agent.getVersion() + '|' + backend + '|' + Arrays.toString( includesRegex ) + '|' + Arrays.toString( excludesRegex );
+			final InstrumentedClassCache classCache = new InstrumentedClassCache( new File( cacheDir ), configKey );
+			LogUtils.println( "Caching instrumented classes in: " + cacheDir );
+			return classCache;
+		}
+		catch ( IOException ex ) {
+			LogUtils.println( "Error creating the instrumented class cache: " + ex.getMessage() );
+			return null;
+		}
 	}
 
 	/**
@@ -71,31 +116,50 @@ public class MethodTransformer implements ClassFileTransformer {
 	 */
 	protected boolean shouldProfileClass( final String className ) {
 		// always skip profiler classes
-		if ( className.matches( "com\\.icehealthsystems\\.jtrace\\..*" ) ) {
+		if ( className.startsWith( PROFILER_PACKAGE ) ) {
 			return false;
 		}
 
-		for ( final String regex : includes ) {
-			if ( className.matches( regex ) ) {
-				// matches - check exclusions
-				for ( final String regex2 : excludes ) {
-					if ( className.matches( regex2 ) ) {
-						return false;
-					}
-				}
-				return true;
-			}
-		}
-		return false;
+		// included and not excluded
+		return includes.matches( className ) && !excludes.matches( className );
+	}
+
+	/**
+	 * Checks if the given loaded class should be instrumented when it is retransformed. Like
+	 * when classes are loaded, inner classes are left to the class they are named after.
+	 * @param clazz
+	 * @return
+	 */
+	public boolean shouldRetransform( final Class<?> clazz ) {
+		final String className = clazz.getName();
+		return className.indexOf( '$' ) < 0 && shouldProfileClass( className );
+	}
+
+	/**
+	 * Checks if method profiling is enabled
+	 * @return
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables method profiling of classes transformed from now on. Loaded classes
+	 * have to be retransformed to add or remove their probes.
+	 * @param enabled
+	 */
+	public void setEnabled( final boolean enabled ) {
+		this.enabled = enabled;
 	}
 
 	/**
-	 * Transforms the class for method profiling.
+	 * Transforms the class for method profiling. When retransforming, the JVM passes the class
+	 * as it was before being instrumented, so leaving it as is removes the probes.
 	 */
 	@Override
 	public byte[] transform( final ClassLoader loader, final String className, final Class<?> beingRedefined, final ProtectionDomain protectionDomain, final byte[] classBytes ) throws IllegalClassFormatException {
 		// enabled?
-		if ( !Config.getInstance().isMethodProfilingEnabled() ) {
+		if ( !enabled ) {
 			return classBytes;
 		}
 
@@ -105,117 +169,41 @@ public class MethodTransformer implements ClassFileTransformer {
 		}
 
 		// Only use the class name before $'s (we only care about the actual class name, not the derived name)
-		final String normClassName = className.replaceAll( "/", "." ).split( "\\$" )[0];
+		final int innerClassIndex = className.indexOf( '$' );
+		final String normClassName = ( innerClassIndex < 0 ? className : className.substring( 0, innerClassIndex ) ).replace( '/', '.' );
 
 		// Check and transform the class
 		if ( !shouldProfileClass( normClassName ) ) {
 			return classBytes;
 		}
 
-		// make sure a class pool exists for the specified class loader
-		final ClassPool classPool = classPools.computeIfAbsent( loader, key -> {
-			ClassPool pool = new ClassPool();
-			pool.appendClassPath( new LoaderClassPath( loader ) );
-			return pool;
-		} );
-
-		// Transform the class (if not already transformed)
-		final AtomicReference<byte[]> classBytesRef = new AtomicReference<byte[]>( classBytes );
-		profilingClasses.computeIfAbsent( normClassName, key -> {
-			classBytesRef.set( transform( classPool, normClassName, classBytes ) );
-			return classPool;
-		} );
-		return classBytesRef.get();
-	}
-
-	/**
-	 * Transforms the given class for method profiling
-	 * @param classPool
-	 * @param normClassName
-	 * @param classfileBuffer
-	 * @return
-	 */
-	protected byte[] transform( final ClassPool classPool, final String normClassName, final byte[] classfileBuffer ) {
-		try {
-			LogUtils.println( "Transforming: " + normClassName );
-
-			// convert byte[] to a CtClass
-			final ByteArrayInputStream bin = new ByteArrayInputStream( classfileBuffer );
-			final CtClass ctClass = classPool.makeClass( bin );
-
-			// transform all constructors
-			final CtConstructor[] ctConstructors = ctClass.getDeclaredConstructors();
-			for ( final CtConstructor constructor : ctConstructors ) {
-				transformBehavior( normClassName, constructor );
-			}
-
-			// transform all class methods
-			final CtMethod[] ctMethods = ctClass.getDeclaredMethods();
-			for ( final CtMethod method : ctMethods ) {
-				transformBehavior( normClassName, method );
-			}
-
-			// get the net bytecode
-			final byte[] newByteCode = ctClass.toBytecode();
-
-			// detach
-			ctClass.detach();
-
-			return newByteCode;
-		}
-		catch ( IOException | CannotCompileException ex ) {
-			LogUtils.println( "Error transforming " + normClassName );
-			ex.printStackTrace( System.out );
+		// skip classes without any methods to instrument before handing them to the instrumenter
+		final Set<String> methods = ClassFileScanner.findInstrumentableMethods( classBytes );
+		if ( methods != null && methods.isEmpty() ) {
+			return classBytes;
 		}
-		return classfileBuffer;
-	}
 
-	/**
-	 * Transforms the given behavior (constructor or method)
-	 * @param normClassName
-	 * @param method
-	 */
-	protected void transformBehavior( final String normClassName, final CtBehavior method ) {
-		// skip empty methods
-		if ( method.isEmpty() ) {
-			return;
+		// Transform the class (if not already transformed by this class loader, or being retransformed)
+		final Set<String> loaderClasses = profilingClasses.computeIfAbsent( loader, key -> ConcurrentHashMap.newKeySet() );
+		if ( !loaderClasses.add( normClassName ) && beingRedefined == null ) {
+			return classBytes;
 		}
 
-		String methodSignature;
-		try {
-			// determine the method signature (Ex: some.package.SomeClass.someMethod(String, long, boolean))
-			final CtClass[] params = method.getParameterTypes();
-			final StringBuilder signature = new StringBuilder();
-			signature.append( normClassName ).append( '.' ).append( method.getName() ).append( '(' );
-			for ( int i = 0; i < params.length; i++ ) {
-				signature.append( params[i].getSimpleName() );
-				if ( i < params.length - 1 ) {
-					signature.append( ", " );
-				}
-			}
-			signature.append( ')' );
-			methodSignature = signature.toString();
-		}
-		catch ( NotFoundException ex ) {
-			LogUtils.println( "Error transforming a method in " + normClassName );
-			ex.printStackTrace( System.out );
-			return;
+		// the cache relies on the scanned methods to know which method IDs a class uses
+		if ( cache == null || methods == null ) {
+			return instrumenter.instrument( loader, normClassName, classBytes, methods );
 		}
 
-		try {
-			final StringBuilder code = new StringBuilder( 100 );
-			code.append( '{' ).append( PROFILING_CLASS ).append( ".getForThread().methodExecutionStarting(\"" ).append( methodSignature ).append( "\", null);}" );
-			method.insertBefore( code.toString() );
-
-			code.setLength( 0 );
-			code.append( '{' ).append( PROFILING_CLASS ).append( ".getForThread().methodExecutionEnded();}" );
-			method.insertAfter( code.toString() );
-		}
-		catch ( CannotCompileException ex ) {
-			LogUtils.println( "Error transforming a method: " + methodSignature );
-			ex.printStackTrace( System.out );
-			return;
+		final byte[] cachedBytes = cache.get( classBytes );
+		if ( cachedBytes != null ) {
+			LogUtils.println( "Loaded from cache: " + normClassName );
+			return cachedBytes;
 		}
 
+		final byte[] instrumentedBytes = instrumenter.instrument( loader, normClassName, classBytes, methods );
+		if ( instrumentedBytes != classBytes ) {
+			cache.put( classBytes, instrumentedBytes, className, normClassName, methods );
+		}
+		return instrumentedBytes;
 	}
 }
@@ -0,0 +1,78 @@
+package com.icehealthsystems.jtrace.transform;
+
+import java.util.Set;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
+
+/**
+ * Class visitor which registers each instrumented method and inserts the probes into it
+ *
+ * @author Matt MacLean
+ */
+class ProbeClassVisitor extends ClassVisitor {
+	/**
+	 * The class name used in method signatures
+	 */
+	private final transient String normClassName;
+
+	/**
+	 * Name and descriptor of the methods to instrument, or null to instrument all methods with code
+	 */
+	private final transient Set<String> methods;
+
+	/**
+	 * The internal class name, which constructors are named after
+	 */
+	private transient String className;
+
+	/**
+	 * Creates a visitor passing the instrumented class on to the given visitor
+	 * @param next
+	 * @param normClassName
+	 * @param methods
+	 */
+	ProbeClassVisitor( final ClassVisitor next, final String normClassName, final Set<String> methods ) {
+		super( Opcodes.ASM9, next );
+		this.normClassName = normClassName;
+		this.methods = methods;
+	}
+
+	/**
+	 * Keeps track of the class name
+	 */
+	@Override
+	public void visit( final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces ) {
+		className = name;
+		super.visit( version, access, name, signature, superName, interfaces );
+	}
+
+	/**
+	 * Inserts the probes into the methods which should be instrumented
+	 */
+	@Override
+	public MethodVisitor visitMethod( final int access, final String name, final String descriptor, final String signature, final String[] exceptions ) {
+		final MethodVisitor next = super.visitMethod( access, name, descriptor, signature, exceptions );
+		if ( !shouldInstrument( access, name, descriptor ) ) {
+			return next;
+		}
+
+		final int methodId = MethodRegistry.register( MethodSignatures.fromDescriptor( normClassName, className, name, descriptor ), null );
+		return new ProbeMethodVisitor( next, access, name, descriptor, methodId );
+	}
+
+	/**
+	 * Checks if the given method should be instrumented
+	 * @param access
+	 * @param name
+	 * @param descriptor
+	 * @return
+	 */
+	private boolean shouldInstrument( final int access, final String name, final String descriptor ) {
+		if ( ( access & ( Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE ) ) != 0 || "<clinit>".equals( name ) ) {
+			return false;
+		}
+		return methods == null || methods.contains( name + descriptor );
+	}
+}
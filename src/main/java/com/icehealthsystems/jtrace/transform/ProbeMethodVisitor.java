@@ -0,0 +1,150 @@
+package com.icehealthsystems.jtrace.transform;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import com.icehealthsystems.jtrace.runtime.methods.MethodExecutionStack;
+
+/**
+ * Method visitor inserting a method execution starting probe at the start of the method
+ * and a method execution ended probe before each return, the same as the Javassist backend.
+ * The method body is also wrapped in a catch all handler which ends the method execution
+ * and rethrows, so the ended probe runs on every exit path. Constructors are only covered
+ * from after their super (or this) constructor call since the verifier does not allow
+ * handlers over code where this is uninitialized.
+ *
+ * @author Matt MacLean
+ */
+class ProbeMethodVisitor extends AdviceAdapter {
+	/**
+	 * Internal name of the method execution stack class
+	 */
+	private static final String STACK_CLASS = Type.getInternalName( MethodExecutionStack.class );
+
+	/**
+	 * Descriptor of MethodExecutionStack.getForThread()
+	 */
+	private static final String GET_FOR_THREAD = "()L" + STACK_CLASS + ";";
+
+	/**
+	 * The registered method ID
+	 */
+	private final transient int methodId;
+
+	/**
+	 * Is the visited method a constructor
+	 */
+	private final transient boolean constructor;
+
+	/**
+	 * Start of the code covered by the catch all handler
+	 */
+	private final transient Label handlerStart = new Label();
+
+	/**
+	 * Has the start of the code covered by the catch all handler been visited
+	 */
+	private transient boolean handlerStarted;
+
+	/**
+	 * Creates a visitor passing the instrumented method on to the given visitor
+	 * @param next
+	 * @param access
+	 * @param name
+	 * @param descriptor
+	 * @param methodId
+	 */
+	ProbeMethodVisitor( final MethodVisitor next, final int access, final String name, final String descriptor, final int methodId ) {
+		super( Opcodes.ASM9, next, access, name, descriptor );
+		this.methodId = methodId;
+		this.constructor = "<init>".equals( name );
+	}
+
+	/**
+	 * Inserts the method execution starting probe of constructors, which still goes before
+	 * the super constructor call so constructors are timed the same as with Javassist
+	 */
+	@Override
+	public void visitCode() {
+		super.visitCode();
+		if ( constructor ) {
+			probe( "methodExecutionStarting" );
+		}
+	}
+
+	/**
+	 * Inserts the method execution starting probe of methods and starts the code covered
+	 * by the catch all handler
+	 */
+	@Override
+	protected void onMethodEnter() {
+		if ( !constructor ) {
+			probe( "methodExecutionStarting" );
+		}
+		visitLabel( handlerStart );
+		handlerStarted = true;
+	}
+
+	/**
+	 * Inserts the method execution ended probe before returns, throws are left to the
+	 * catch all handler
+	 */
+	@Override
+	protected void onMethodExit( final int opcode ) {
+		if ( opcode != ATHROW ) {
+			probe( "methodExecutionEnded" );
+		}
+	}
+
+	/**
+	 * Appends the catch all handler
+	 */
+	@Override
+	public void visitMaxs( final int maxStack, final int maxLocals ) {
+		if ( handlerStarted ) {
+			final Label handlerEnd = new Label();
+			final Label handler = new Label();
+			visitLabel( handlerEnd );
+			// added last so it never takes precedence over the method's own handlers
+			visitTryCatchBlock( handlerStart, handlerEnd, handler, null );
+			visitLabel( handler );
+			visitFrame( F_NEW, 0, new Object[0], 1, new Object[] { "java/lang/Throwable" } );
+			probe( "methodExecutionEnded" );
+			visitInsn( ATHROW );
+		}
+		super.visitMaxs( maxStack, maxLocals );
+	}
+
+	/**
+	 * Inserts a call to the given method of the current thread's method execution stack
+	 * passing the method ID
+	 * @param stackMethod
+	 */
+	private void probe( final String stackMethod ) {
+		visitMethodInsn( INVOKESTATIC, STACK_CLASS, "getForThread", GET_FOR_THREAD, false );
+		pushInt( methodId );
+		visitMethodInsn( INVOKEVIRTUAL, STACK_CLASS, stackMethod, "(I)V", false );
+	}
+
+	/**
+	 * Pushes an int constant using the smallest instruction. Unlike push(int) this goes
+	 * through the adapter, which has to see every instruction before the super constructor call.
+	 * @param value
+	 */
+	private void pushInt( final int value ) {
+		if ( value >= -1 && value <= 5 ) {
+			visitInsn( ICONST_0 + value );
+		}
+		else if ( value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ) {
+			visitIntInsn( BIPUSH, value );
+		}
+		else if ( value >= Short.MIN_VALUE && value <= Short.MAX_VALUE ) {
+			visitIntInsn( SIPUSH, value );
+		}
+		else {
+			visitLdcInsn( value );
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.icehealthsystems.jtrace.util;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Loads the agent into a running JVM using the JDK Attach API. The Attach API is called
+ * reflectively since on Java 8 it is only in the JDK's tools.jar, which is not on the classpath.
+ *
+ * @author Matt MacLean
+ */
+public final class Attacher {
+	/**
+	 * The Attach API virtual machine class
+	 */
+	private static final String VM_CLASS = "com.sun.tools.attach.VirtualMachine";
+
+	/**
+	 * Utility class
+	 */
+	private Attacher() {
+		// NO OP
+	}
+
+	/**
+	 * Loads the given agent jar into the JVM with the given process ID
+	 * @param pid
+	 * @param agentJar
+	 * @param agentArgs
+	 * @throws ReflectiveOperationException if the Attach API is not available or attaching fails
+	 */
+	public static void attach( final String pid, final File agentJar, final String agentArgs ) throws ReflectiveOperationException {
+		final Class<?> vmClass = loadVirtualMachineClass( System.getProperty( "java.home" ) );
+		final Object machine = invoke( vmClass.getMethod( "attach", String.class ), null, pid );
+		try {
+			invoke( vmClass.getMethod( "loadAgent", String.class, String.class ), machine, agentJar.getAbsolutePath(), agentArgs );
+		}
+		finally {
+			invoke( vmClass.getMethod( "detach" ), machine );
+		}
+	}
+
+	/**
+	 * Loads the Attach API virtual machine class, from the JDK's tools.jar if it is not on the classpath
+	 * @param javaHome
+	 * @return
+	 * @throws ClassNotFoundException if the Attach API is not available (Ex: running on a JRE)
+	 */
+	protected static Class<?> loadVirtualMachineClass( final String javaHome ) throws ClassNotFoundException {
+		try {
+			return Class.forName( VM_CLASS );
+		}
+		catch ( ClassNotFoundException ex ) {
+			final File toolsJar = new File( javaHome, "../lib/tools.jar" );
+			if ( !toolsJar.isFile() ) {
+				throw new ClassNotFoundException( VM_CLASS + " not found, attaching requires a JDK", ex );
+			}
+			try {
+				return Class.forName( VM_CLASS, true, new URLClassLoader( new URL[] { toolsJar.toURI().toURL() } ) );
+			}
+			catch ( MalformedURLException badUrl ) {
+				throw new ClassNotFoundException( VM_CLASS, badUrl );
+			}
+		}
+	}
+
+	/**
+	 * Gets the jar the agent was loaded from
+	 * @return
+	 * @throws URISyntaxException
+	 */
+	public static File getAgentJar() throws URISyntaxException {
+		return new File( Attacher.class.getProtectionDomain().getCodeSource().getLocation().toURI() );
+	}
+
+	/**
+	 * Invokes an Attach API method, unwrapping the exception it throws
+	 * @param method
+	 * @param target
+	 * @param args
+	 * @return
+	 * @throws ReflectiveOperationException
+	 */
+	private static Object invoke( final Method method, final Object target, final Object... args ) throws ReflectiveOperationException {
+		try {
+			return method.invoke( target, args );
+		}
+		catch ( InvocationTargetException ex ) {
+			throw new ReflectiveOperationException( String.valueOf( ex.getCause() ), ex.getCause() );
+		}
+	}
+}
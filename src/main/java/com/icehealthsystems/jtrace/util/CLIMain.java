@@ -3,6 +3,7 @@ package com.icehealthsystems.jtrace.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.net.URISyntaxException;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -49,6 +50,15 @@ public final class CLIMain {
 				toScreen( metrics, out, convertNanos );
 			}
 		}
+		else if ( args.length > 1 && args[0].equals( "attach" ) ) {
+			try {
+				Attacher.attach( args[1], Attacher.getAgentJar(), args.length > 2 ? args[2] : "" );
+				out.println( "Attached to " + args[1] );
+			}
+			catch ( ReflectiveOperationException | URISyntaxException ex ) {
+				out.println( "Failed to attach: " + ex.getMessage() );
+			}
+		}
 		else {
 			out.println( "Unknown arguments: " + Arrays.asList( args ) );
 		}
@@ -7,8 +7,10 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Predicate;
@@ -22,9 +24,10 @@ import com.icehealthsystems.jtrace.metrics.MethodExecutionMetric;
  */
 public class DumpProcessor {
 	/**
-	 * Loaded metrics
+	 * Loaded metrics, keyed by themselves so metrics of the same method (signature and extra)
+	 * are combined no matter which key they were stored under in the dump file
 	 */
-	private final transient ConcurrentMap<Integer, MethodExecutionMetric> metricsMap;
+	private final transient Map<MethodExecutionMetric, MethodExecutionMetric> metricsMap = new HashMap<>();
 
 	/**
 	 * Loads a dump file
@@ -34,7 +37,7 @@ public class DumpProcessor {
 	@SuppressWarnings( "unchecked" )
 	public DumpProcessor( final File file ) throws IOException, ClassNotFoundException {
 		try ( ObjectInputStream oin = new ObjectInputStream( Files.newInputStream( file.toPath() ) ) ) {
-			this.metricsMap = (ConcurrentMap<Integer, MethodExecutionMetric>)oin.readObject();
+			merge( (ConcurrentMap<Integer, MethodExecutionMetric>)oin.readObject() );
 		}
 	}
 
@@ -47,21 +50,23 @@ public class DumpProcessor {
 	@SuppressWarnings( "unchecked" )
 	public void combine( final File file ) throws IOException, ClassNotFoundException {
 		try ( ObjectInputStream oin = new ObjectInputStream( Files.newInputStream( file.toPath() ) ) ) {
-			final ConcurrentMap<Integer, MethodExecutionMetric> map = (ConcurrentMap<Integer, MethodExecutionMetric>)oin.readObject();
-			map.forEach( ( key, value ) -> {
-				this.metricsMap.compute( key, ( key2, existing ) -> {
-					if ( existing == null ) {
-						return value;
-					}
-					else {
-						existing.aggregate( value );
-						return existing;
-					}
-				} );
-			} );
+			merge( (ConcurrentMap<Integer, MethodExecutionMetric>)oin.readObject() );
 		}
 	}
 
+	/**
+	 * Merges the metrics of a loaded dump into this dump
+	 * @param map
+	 */
+	private void merge( final ConcurrentMap<Integer, MethodExecutionMetric> map ) {
+		map.values().forEach( value -> {
+			this.metricsMap.merge( value, value, ( existing, added ) -> {
+				existing.aggregate( added );
+				return existing;
+			} );
+		} );
+	}
+
 	/**
 	 * Gets metrics using the defined filter and sorting
 	 * @param filterPred
@@ -1,5 +1,6 @@
 package com.icehealthsystems.jtrace.metrics;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
@@ -8,11 +9,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.junit.Test;
 import com.icehealthsystems.jtrace.runtime.AgentArguments;
 import com.icehealthsystems.jtrace.runtime.Config;
 import com.icehealthsystems.jtrace.runtime.methods.MethodExecutionTimer;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
 
 /**
  * AggregatedMetricsCollectorTest Unit Tests
@@ -112,4 +116,67 @@ public class AggregatedMetricsCollectorTest {
 
 		Config.getInstance().setArgs( null );
 	}
+
+	/**
+	 * Verifies methods with colliding signature hash codes are aggregated separately
+	 */
+	@Test
+	public void itKeepsMethodsWithCollidingHashCodesApart() {
+		final AggregatingMetricsCollector collector = new AggregatingMetricsCollector();
+		collector.collectMethodMetrics( MethodRegistry.register( "Aa", null ), 1, 2 );
+		collector.collectMethodMetrics( MethodRegistry.register( "BB", null ), 3, 4 );
+		collector.collectMethodMetrics( MethodRegistry.register( "BB", null ), 3, 4 );
+
+		final Set<MethodExecutionMetric> metrics = collector.getAggregatedMetrics();
+		assertEquals( "Did not keep both methods", 2, metrics.size() );
+		for ( final MethodExecutionMetric metric : metrics ) {
+			if ( "Aa".equals( metric.getMethodSignature() ) ) {
+				assertEquals( "Did not aggregate Aa", 1, metric.getInvocations() );
+				assertEquals( "Did not aggregate Aa own time", 1, metric.getOwnTime() );
+			}
+			else {
+				assertEquals( "Did not aggregate BB", 2, metric.getInvocations() );
+				assertEquals( "Did not aggregate BB total time", 8, metric.getTotalTime() );
+			}
+		}
+
+		collector.reset();
+		assertTrue( "Did not reset", collector.getAggregatedMetrics().isEmpty() );
+		collector.collectMethodMetrics( MethodRegistry.register( "Aa", null ), 1, 2 );
+		assertEquals( "Did not aggregate after reset", 1, collector.getAggregatedMetrics().size() );
+	}
+
+	/**
+	 * Verifies the metrics collected by many threads are merged and dead threads are dropped
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void itMergesMetricsOfAllThreads() throws InterruptedException {
+		final AggregatingMetricsCollector collector = new AggregatingMetricsCollector();
+		final int methodId = MethodRegistry.register( "threads.method()", null );
+
+		final List<Thread> threads = new ArrayList<>();
+		for ( int i = 0; i < 8; i++ ) {
+			final Thread thread = new Thread( () -> {
+				for ( int j = 0; j < 1000; j++ ) {
+					collector.collectMethodMetrics( methodId, 1, 2 );
+				}
+			} );
+			thread.start();
+			threads.add( thread );
+		}
+		for ( final Thread thread : threads ) {
+			thread.join( 5000 );
+		}
+
+		final Set<MethodExecutionMetric> metrics = collector.getAggregatedMetrics();
+		assertEquals( "Did not merge one metric", 1, metrics.size() );
+		final MethodExecutionMetric metric = metrics.iterator().next();
+		assertEquals( "Did not merge all invocations", 8000, metric.getInvocations() );
+		assertEquals( "Did not merge all own time", 8000, metric.getOwnTime() );
+		assertEquals( "Did not merge all total time", 16_000, metric.getTotalTime() );
+
+		// the tables of the dead threads were dropped after their final merge
+		assertEquals( "Did not keep the merged metric", 8000, collector.getAggregatedMetrics().iterator().next().getInvocations() );
+	}
 }
@@ -0,0 +1,95 @@
+package com.icehealthsystems.jtrace.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
+
+/**
+ * Thread metrics table unit tests
+ *
+ * @author Matt MacLean
+ */
+public class ThreadMetricsTableTest {
+	/**
+	 * Verifies only the executions recorded since the previous merge are merged
+	 */
+	@Test
+	public void itMergesNewExecutions() {
+		final int methodId = MethodRegistry.register( "table.method1()", null );
+		final ThreadMetricsTable table = new ThreadMetricsTable();
+		final ConcurrentMap<Integer, MethodExecutionMetric> metrics = new ConcurrentHashMap<>();
+
+		table.add( methodId, 1, 2 );
+		table.add( methodId, 3, 4 );
+		table.mergeInto( metrics );
+		final MethodExecutionMetric metric = metrics.get( methodId );
+		assertEquals( "Did not merge the method signature", "table.method1()", metric.getMethodSignature() );
+		assertEquals( "Did not merge the invocations", 2, metric.getInvocations() );
+		assertEquals( "Did not merge the own time", 4, metric.getOwnTime() );
+		assertEquals( "Did not merge the total time", 6, metric.getTotalTime() );
+
+		table.mergeInto( metrics );
+		assertEquals( "Merged the same executions twice", 2, metric.getInvocations() );
+
+		table.add( methodId, 5, 6 );
+		table.mergeInto( metrics );
+		assertEquals( "Did not merge the new invocation", 3, metric.getInvocations() );
+		assertEquals( "Did not merge the new own time", 9, metric.getOwnTime() );
+		assertEquals( "Did not merge the new total time", 12, metric.getTotalTime() );
+	}
+
+	/**
+	 * Verifies discarded executions are never merged
+	 */
+	@Test
+	public void itDiscardsExecutions() {
+		final ThreadMetricsTable table = new ThreadMetricsTable();
+		final ConcurrentMap<Integer, MethodExecutionMetric> metrics = new ConcurrentHashMap<>();
+
+		table.add( 1, 1, 2 );
+		table.discard();
+		table.mergeInto( metrics );
+		assertTrue( "Merged discarded executions", metrics.isEmpty() );
+
+		table.add( 1, 1, 2 );
+		table.mergeInto( metrics );
+		assertEquals( "Did not merge executions after discarding", 1, metrics.get( 1 ).getInvocations() );
+	}
+
+	/**
+	 * Verifies the table grows to hold large method IDs
+	 */
+	@Test
+	public void itGrows() {
+		final ThreadMetricsTable table = new ThreadMetricsTable();
+		final ConcurrentMap<Integer, MethodExecutionMetric> metrics = new ConcurrentHashMap<>();
+
+		table.add( 1000, 1, 1 );
+		table.add( 10, 1, 1 );
+		table.add( 300, 1, 1 );
+		table.discard();
+		table.add( 1000, 1, 1 );
+		table.mergeInto( metrics );
+		assertEquals( "Did not merge only the new execution", 1, metrics.size() );
+		assertEquals( "Did not keep counters of a large method ID", 1, metrics.get( 1000 ).getInvocations() );
+	}
+
+	/**
+	 * Verifies the table knows when it's owner has died
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void itDetectsDeadOwners() throws InterruptedException {
+		assertFalse( "Owner is not dead", new ThreadMetricsTable().isOwnerDead() );
+
+		final ThreadMetricsTable[] tables = new ThreadMetricsTable[1];
+		final Thread thread = new Thread( () -> tables[0] = new ThreadMetricsTable() );
+		thread.start();
+		thread.join( 1000 );
+		assertTrue( "Owner is dead", tables[0].isOwnerDead() );
+	}
+}
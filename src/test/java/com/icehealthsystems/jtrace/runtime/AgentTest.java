@@ -4,9 +4,14 @@ import java.lang.instrument.ClassDefinition;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
+import java.lang.management.ManagementFactory;
 import java.util.jar.JarFile;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.junit.Assert;
 import org.junit.Test;
+import com.icehealthsystems.samples.SampleApplication1;
 
 /**
  * Agent unit tests
@@ -16,6 +21,7 @@ import org.junit.Test;
 public class AgentTest {
 	@Test
 	public void itCanCallAgentmain() {
+		Agent.STARTED.set( false );
 		Agent.agentmain( "", new Instrumentation() {
 			@Override
 			public void setNativeMethodPrefix( final ClassFileTransformer transformer, final String prefix ) {
@@ -95,4 +101,81 @@ public class AgentTest {
 		Assert.assertTrue( "It passes!", true );
 	}
 
+	/**
+	 * Verifies the agent reports a version when it is not running from the agent jar
+	 */
+	@Test
+	public void itHasAVersion() {
+		Assert.assertEquals( "Did not report the development version", "development", Agent.getVersion() );
+	}
+
+	/**
+	 * Verifies the JMX control is registered when asked for and retransforming is supported
+	 * @throws JMException
+	 */
+	@Test
+	public void itRegistersTheJmxControl() throws JMException {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName name = new ObjectName( ProfilerControl.OBJECT_NAME );
+
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation();
+		new Agent( "jmx,disableMethodProfiling" ).run( instrumentation );
+		try {
+			Assert.assertTrue( "Did not register the JMX control", server.isRegistered( name ) );
+			Assert.assertEquals( "Did not add the disabled method transformer", 1, instrumentation.transformers.size() );
+			Assert.assertEquals( "Did not start disabled", Boolean.FALSE, server.getAttribute( name, "Enabled" ) );
+
+			// already registered
+			new Agent( "jmx" ).run( instrumentation );
+		}
+		finally {
+			server.unregisterMBean( name );
+		}
+
+		new Agent( "jmx" ).run( new RecordingInstrumentation() {
+			@Override
+			public boolean isRetransformClassesSupported() {
+				return false;
+			}
+		} );
+		Assert.assertFalse( "Registered the JMX control without retransform support", server.isRegistered( name ) );
+
+		new Agent( "disableMethodProfiling" ).run( instrumentation );
+		Assert.assertFalse( "Registered the JMX control without being asked to", server.isRegistered( name ) );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Verifies attaching the agent instruments the loaded classes in the background, once
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void itInstrumentsLoadedClassesWhenAttached() throws InterruptedException {
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation( SampleApplication1.class, String.class );
+		final Agent agent = new Agent( "includes=com\\.icehealthsystems\\.samples\\..*" );
+		agent.run( instrumentation );
+		final Thread thread = agent.instrumentLoadedClasses();
+		Assert.assertTrue( "Did not instrument in a daemon thread", thread.isDaemon() );
+		thread.join();
+		Assert.assertEquals( "Did not instrument the loaded classes", 1, instrumentation.batches.size() );
+		Assert.assertEquals( "Did not instrument the included class", SampleApplication1.class, instrumentation.batches.get( 0 ).get( 0 ) );
+
+		// already running
+		Agent.STARTED.set( true );
+		final RecordingInstrumentation attached = new RecordingInstrumentation( SampleApplication1.class );
+		Agent.agentmain( "", attached );
+		Assert.assertTrue( "Started a second agent", attached.transformers.isEmpty() );
+
+		// nothing to instrument
+		Assert.assertNull( "Instrumented with profiling disabled", new Agent( "disableMethodProfiling" ).instrumentLoadedClasses() );
+		final Agent unsupported = new Agent( "" );
+		unsupported.run( new RecordingInstrumentation() {
+			@Override
+			public boolean isRetransformClassesSupported() {
+				return false;
+			}
+		} );
+		Assert.assertNull( "Instrumented without retransform support", unsupported.instrumentLoadedClasses() );
+		Config.getInstance().setArgs( null );
+	}
 }
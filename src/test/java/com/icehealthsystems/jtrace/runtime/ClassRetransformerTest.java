@@ -0,0 +1,94 @@
+package com.icehealthsystems.jtrace.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.transform.MethodTransformer;
+import com.icehealthsystems.samples.SampleApplication1;
+import com.icehealthsystems.samples.SampleApplication2;
+import com.icehealthsystems.samples.SampleApplication3;
+
+/**
+ * ClassRetransformer unit tests
+ * 
+ * @author Matt MacLean
+ */
+public class ClassRetransformerTest {
+	/**
+	 * Verifies only the modifiable classes which should be profiled are retransformed
+	 */
+	@Test
+	public void itRetransformsProfiledClasses() {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation( SampleApplication1.class, String.class, SampleApplication2.class ) {
+			@Override
+			public boolean isModifiableClass( final Class<?> theClass ) {
+				return theClass != SampleApplication2.class;
+			}
+		};
+		final ClassRetransformer retransformer = new ClassRetransformer( instrumentation, new MethodTransformer(), 10, 0 );
+		assertEquals( "Did not report the retransformed classes", 1, retransformer.retransformLoadedClasses() );
+		assertEquals( "Did not retransform just the profiled classes", Arrays.asList( Arrays.asList( SampleApplication1.class ) ), instrumentation.batches );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Verifies paced retransforms start with single classes and grow while the pauses stay within budget
+	 */
+	@Test
+	public void itPacesBatches() {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation( SampleApplication1.class, SampleApplication2.class, SampleApplication3.class, SampleApplication1.class );
+		final ClassRetransformer retransformer = new ClassRetransformer( instrumentation, new MethodTransformer(), 2, 60_000 ) {
+			@Override
+			protected int nextBatchSize( final int batchSize, final long pause ) {
+				// every batch is well within a one minute budget
+				return super.nextBatchSize( batchSize, 0 );
+			}
+		};
+		assertEquals( "Did not report the retransformed classes", 4, retransformer.retransformLoadedClasses() );
+		assertEquals( "Did not start with a single class", 1, instrumentation.batches.get( 0 ).size() );
+		assertEquals( "Did not grow the batches up to the maximum size", Arrays.asList( 1, 2, 1 ), Arrays.asList( instrumentation.batches.get( 0 ).size(), instrumentation.batches.get( 1 ).size(), instrumentation.batches.get( 2 ).size() ) );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Verifies the batch size follows the pauses of the previous batches
+	 */
+	@Test
+	public void itAdjustsBatchSizesToTheBudget() {
+		final ClassRetransformer retransformer = new ClassRetransformer( new RecordingInstrumentation(), null, 16, 10 );
+		final long budget = TimeUnit.MILLISECONDS.toNanos( 10 );
+		assertEquals( "Did not grow a fast batch", 8, retransformer.nextBatchSize( 4, budget / 4 ) );
+		assertEquals( "Grew past the maximum batch size", 16, retransformer.nextBatchSize( 16, 0 ) );
+		assertEquals( "Changed a batch within budget", 4, retransformer.nextBatchSize( 4, budget * 3 / 4 ) );
+		assertEquals( "Did not shrink a slow batch", 2, retransformer.nextBatchSize( 4, budget * 2 ) );
+		assertEquals( "Shrunk below a single class", 1, retransformer.nextBatchSize( 1, budget * 2 ) );
+	}
+
+	/**
+	 * Verifies failing batches are skipped and paced retransforms stop when interrupted
+	 */
+	@Test
+	public void itSurvivesErrorsAndInterrupts() {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation( SampleApplication1.class, SampleApplication2.class );
+		instrumentation.failing = true;
+		assertEquals( "Reported failed classes as retransformed", 0, new ClassRetransformer( instrumentation, new MethodTransformer(), 1, 0 ).retransformLoadedClasses() );
+		assertTrue( "Recorded failed batches", instrumentation.batches.isEmpty() );
+
+		instrumentation.failing = false;
+		Thread.currentThread().interrupt();
+		try {
+			assertEquals( "Did not stop after the interrupted batch", 1, new ClassRetransformer( instrumentation, new MethodTransformer(), 1, 10 ).retransformLoadedClasses() );
+		}
+		finally {
+			assertTrue( "Did not keep the interrupt", Thread.interrupted() );
+		}
+		assertFalse( "Did not retransform the first batch", instrumentation.batches.isEmpty() );
+		Config.getInstance().setArgs( null );
+	}
+}
@@ -1,5 +1,6 @@
 package com.icehealthsystems.jtrace.runtime;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -22,4 +23,41 @@ public class ConfigTest {
 		assertTrue( "Did not enabled method profiling", Config.getInstance().isMethodProfilingEnabled() );
 		assertNull( "Did not clear arguments", Config.getInstance().getArgs() );
 	}
+
+	/**
+	 * Tests the instrumentation backend argument
+	 */
+	@Test
+	public void itReadsBackendVariable() {
+		assertEquals( "Did not default to javassist", "javassist", Config.getInstance().getBackend() );
+		Config.getInstance().setArgs( new AgentArguments( "backend=asm" ) );
+		assertEquals( "Did not read the backend", "asm", Config.getInstance().getBackend() );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Tests the instrumented class cache directory argument
+	 */
+	@Test
+	public void itReadsCacheDirVariable() {
+		assertNull( "Did not default to no cache", Config.getInstance().getCacheDir() );
+		Config.getInstance().setArgs( new AgentArguments( "cacheDir=target/cache" ) );
+		assertEquals( "Did not read the cache directory", "target/cache", Config.getInstance().getCacheDir() );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Tests the runtime control arguments
+	 */
+	@Test
+	public void itReadsJmxVariables() {
+		assertFalse( "Did not default to no JMX control", Config.getInstance().isJmxEnabled() );
+		assertEquals( "Did not default to batches of 100", 100, Config.getInstance().getRetransformBatchSize() );
+		assertEquals( "Did not default to a 20ms pause budget", 20, Config.getInstance().getRetransformBudget() );
+		Config.getInstance().setArgs( new AgentArguments( "jmx,retransformBatchSize=10,retransformBudget=5" ) );
+		assertTrue( "Did not read the JMX control", Config.getInstance().isJmxEnabled() );
+		assertEquals( "Did not read the batch size", 10, Config.getInstance().getRetransformBatchSize() );
+		assertEquals( "Did not read the pause budget", 5, Config.getInstance().getRetransformBudget() );
+		Config.getInstance().setArgs( null );
+	}
 }
@@ -0,0 +1,117 @@
+package com.icehealthsystems.jtrace.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.transform.MethodTransformer;
+import com.icehealthsystems.jtrace.util.TestUtils;
+import com.icehealthsystems.samples.SampleApplication1;
+import com.icehealthsystems.samples.SampleApplication2;
+
+/**
+ * ProfilerControl unit tests
+ * 
+ * @author Matt MacLean
+ */
+public class ProfilerControlTest {
+	/**
+	 * Verifies enabling and disabling profiling adds and removes the probes of the loaded classes in batches
+	 * @throws IOException
+	 */
+	@Test
+	public void itRetransformsLoadedClasses() throws IOException {
+		Config.getInstance().setArgs( new AgentArguments( "disableMethodProfiling,backend=asm,includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation( String.class, SampleApplication1.class, int.class, SampleApplication2.class, ProfilerControlTest.class );
+		instrumentation.addTransformer( transformer, true );
+		final ProfilerControl control = createControl( instrumentation, transformer, 1 );
+		assertFalse( "Did not start disabled", control.isEnabled() );
+
+		control.enable();
+		assertTrue( "Did not enable profiling", control.isEnabled() );
+		assertEquals( "Did not retransform the profiled classes one at a time", Arrays.asList( Arrays.asList( SampleApplication1.class ), Arrays.asList( SampleApplication2.class ) ), instrumentation.batches );
+		assertFalse( "Did not instrument a loaded class", Arrays.equals( TestUtils.readClassBytes( SampleApplication1.class ), instrumentation.classFiles.get( SampleApplication1.class ) ) );
+
+		control.enable();
+		assertEquals( "Retransformed classes when profiling was already enabled", 2, instrumentation.batches.size() );
+
+		control.disable();
+		assertFalse( "Did not disable profiling", control.isEnabled() );
+		assertEquals( "Did not retransform the profiled classes", 4, instrumentation.batches.size() );
+		assertArrayEquals( "Did not remove the probes of a loaded class", TestUtils.readClassBytes( SampleApplication1.class ), instrumentation.classFiles.get( SampleApplication1.class ) );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Verifies classes are retransformed in batches of the given size
+	 */
+	@Test
+	public void itRetransformsInBatches() {
+		Config.getInstance().setArgs( new AgentArguments( "disableMethodProfiling,includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation( SampleApplication1.class, SampleApplication2.class, SampleApplication1.class );
+		final ProfilerControl control = createControl( instrumentation, transformer, 2 );
+		control.enable();
+		assertEquals( "Did not retransform in batches", Arrays.asList( Arrays.asList( SampleApplication1.class, SampleApplication2.class ), Arrays.asList( SampleApplication1.class ) ), instrumentation.batches );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Verifies failing to retransform classes still switches profiling
+	 */
+	@Test
+	public void itSurvivesRetransformErrors() {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final RecordingInstrumentation instrumentation = new RecordingInstrumentation( SampleApplication1.class );
+		instrumentation.failing = true;
+		final ProfilerControl control = createControl( instrumentation, new MethodTransformer(), 0 );
+		control.disable();
+		assertFalse( "Did not disable profiling", control.isEnabled() );
+		assertTrue( "Retransformed classes", instrumentation.batches.isEmpty() );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Verifies profiling can be switched through JMX
+	 * @throws JMException
+	 */
+	@Test
+	public void itRegistersWithJmx() throws JMException {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		createControl( new RecordingInstrumentation(), transformer, 100 ).register();
+
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName name = new ObjectName( ProfilerControl.OBJECT_NAME );
+		try {
+			assertEquals( "Did not report enabled", Boolean.TRUE, server.getAttribute( name, "Enabled" ) );
+			server.invoke( name, "disable", null, null );
+			assertFalse( "Did not disable profiling", transformer.isEnabled() );
+			server.invoke( name, "enable", null, null );
+			assertTrue( "Did not enable profiling", transformer.isEnabled() );
+		}
+		finally {
+			server.unregisterMBean( name );
+			Config.getInstance().setArgs( null );
+		}
+	}
+
+	/**
+	 * Creates a control retransforming classes in batches of the given size without pacing
+	 * @param instrumentation
+	 * @param transformer
+	 * @param batchSize
+	 * @return
+	 */
+	private static ProfilerControl createControl( final RecordingInstrumentation instrumentation, final MethodTransformer transformer, final int batchSize ) {
+		return new ProfilerControl( transformer, new ClassRetransformer( instrumentation, transformer, batchSize, 0 ) );
+	}
+}
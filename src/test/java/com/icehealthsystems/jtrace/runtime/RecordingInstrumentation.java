@@ -0,0 +1,149 @@
+package com.icehealthsystems.jtrace.runtime;
+
+import java.io.IOException;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import com.icehealthsystems.jtrace.util.TestUtils;
+
+/**
+ * Instrumentation for unit tests which retransforms classes by passing their class files
+ * to the added transformers and recording the results
+ * 
+ * @author Matt MacLean
+ */
+@SuppressWarnings( "PMD" )
+public class RecordingInstrumentation implements Instrumentation {
+	/**
+	 * The "loaded" classes
+	 */
+	private final Class<?>[] loadedClasses;
+
+	/**
+	 * The added transformers
+	 */
+	public final List<ClassFileTransformer> transformers = new ArrayList<>();
+
+	/**
+	 * The classes of each retransformClasses call
+	 */
+	public final List<List<Class<?>>> batches = new ArrayList<>();
+
+	/**
+	 * The last retransformed class file of each class
+	 */
+	public final Map<Class<?>, byte[]> classFiles = new HashMap<>();
+
+	/**
+	 * Should retransforming classes fail
+	 */
+	public boolean failing;
+
+	/**
+	 * Creates an instrumentation with the given loaded classes
+	 * @param loadedClasses
+	 */
+	public RecordingInstrumentation( final Class<?>... loadedClasses ) {
+		this.loadedClasses = loadedClasses;
+	}
+
+	@Override
+	public void addTransformer( final ClassFileTransformer transformer, final boolean canRetransform ) {
+		transformers.add( transformer );
+	}
+
+	@Override
+	public void addTransformer( final ClassFileTransformer transformer ) {
+		transformers.add( transformer );
+	}
+
+	@Override
+	public boolean removeTransformer( final ClassFileTransformer transformer ) {
+		return transformers.remove( transformer );
+	}
+
+	@Override
+	public boolean isRetransformClassesSupported() {
+		return true;
+	}
+
+	@Override
+	public void retransformClasses( final Class<?>... classes ) throws UnmodifiableClassException {
+		if ( failing ) {
+			throw new UnmodifiableClassException( "unit tests" );
+		}
+		batches.add( Arrays.asList( classes ) );
+		for ( final Class<?> clazz : classes ) {
+			try {
+				// transformers get the class file as it was before it was instrumented
+				byte[] classFile = TestUtils.readClassBytes( clazz );
+				for ( final ClassFileTransformer transformer : transformers ) {
+					final byte[] transformed = transformer.transform( clazz.getClassLoader(), clazz.getName().replace( '.', '/' ), clazz, null, classFile );
+					classFile = transformed == null ? classFile : transformed;
+				}
+				classFiles.put( clazz, classFile );
+			}
+			catch ( IOException | IllegalClassFormatException ex ) {
+				throw new IllegalStateException( ex );
+			}
+		}
+	}
+
+	@Override
+	public boolean isRedefineClassesSupported() {
+		return false;
+	}
+
+	@Override
+	public void redefineClasses( final ClassDefinition... definitions ) throws ClassNotFoundException, UnmodifiableClassException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isModifiableClass( final Class<?> theClass ) {
+		return !theClass.isPrimitive() && !theClass.isArray();
+	}
+
+	@Override
+	public Class<?>[] getAllLoadedClasses() {
+		return loadedClasses.clone();
+	}
+
+	@Override
+	public Class<?>[] getInitiatedClasses( final ClassLoader loader ) {
+		return loadedClasses.clone();
+	}
+
+	@Override
+	public long getObjectSize( final Object objectToSize ) {
+		return 0;
+	}
+
+	@Override
+	public void appendToBootstrapClassLoaderSearch( final JarFile jarfile ) {
+		// NO OP
+	}
+
+	@Override
+	public void appendToSystemClassLoaderSearch( final JarFile jarfile ) {
+		// NO OP
+	}
+
+	@Override
+	public boolean isNativeMethodPrefixSupported() {
+		return false;
+	}
+
+	@Override
+	public void setNativeMethodPrefix( final ClassFileTransformer transformer, final String prefix ) {
+		// NO OP
+	}
+}
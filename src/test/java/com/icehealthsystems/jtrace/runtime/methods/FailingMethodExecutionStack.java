@@ -17,12 +17,12 @@ public final class FailingMethodExecutionStack extends MethodExecutionStack {
 	}
 
 	@Override
-	public void methodExecutionStarting( final String methodSignature, final String extra ) {
+	public void methodExecutionStarting( final int methodId ) {
 		throw new IllegalStateException( "fail!" );
 	}
 
 	@Override
-	public void methodExecutionEnded() {
+	public void methodExecutionEnded( final int methodId ) {
 		throw new IllegalStateException( "fail!" );
 	}
 
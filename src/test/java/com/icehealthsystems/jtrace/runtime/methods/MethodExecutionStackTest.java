@@ -4,9 +4,13 @@ import static com.icehealthsystems.jtrace.util.TestUtils.assertInRange;
 import static com.icehealthsystems.jtrace.util.TestUtils.n2m;
 import static java.lang.Thread.sleep;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Assert;
 import org.junit.Test;
 import com.icehealthsystems.jtrace.metrics.AggregatingMetricsCollector;
@@ -162,11 +166,81 @@ public class MethodExecutionStackTest {
 		//assertInRange( "Did not collect the expected amount of total time", 50 * mul, 65 * mul, n2m( UnitTestsMetricsCollector.totalTotalTimeCollected.get() ) );
 	}
 
+	/**
+	 * Verifies each thread gets it's own stack and keeps using it
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void itUsesOneStackPerThread() throws InterruptedException {
+		final MethodExecutionStack stack = MethodExecutionStack.getForThread();
+		assertSame( "Did not return the same stack for the same thread", stack, MethodExecutionStack.getForThread() );
+
+		final AtomicReference<MethodExecutionStack> otherStack = new AtomicReference<>();
+		final Thread thread = new Thread( () -> otherStack.set( MethodExecutionStack.getForThread() ) );
+		thread.start();
+		thread.join( 1000 );
+		assertNotSame( "Did not return a different stack for another thread", stack, otherStack.get() );
+	}
+
+	/**
+	 * Verifies the stack of a thread is released once the thread dies
+	 * @throws InterruptedException
+	 */
+	@Test
+	@SuppressWarnings( "PMD.DoNotCallGarbageCollectionExplicitly" )
+	public void itReleasesStacksOfDeadThreads() throws InterruptedException {
+		final AtomicReference<WeakReference<MethodExecutionStack>> stackRef = new AtomicReference<>();
+		final Thread thread = new Thread( () -> stackRef.set( new WeakReference<>( MethodExecutionStack.getForThread() ) ) );
+		thread.start();
+		thread.join( 1000 );
+
+		for ( int i = 0; i < 10 && stackRef.get().get() != null; i++ ) {
+			System.gc();
+			sleep( 10 );
+		}
+		Assert.assertNull( "Did not release the stack of a dead thread", stackRef.get().get() );
+	}
+
+	/**
+	 * Verifies executions which never ended are discarded when a method further down the
+	 * stack ends, and exits of methods which are not on the stack are ignored
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void itRecoversUnbalancedStacks() throws InterruptedException {
+		AggregatingMetricsCollector.INSTANCE.reset();
+		final int outer = MethodRegistry.register( "unbalanced.outer()", null );
+		final int inner = MethodRegistry.register( "unbalanced.inner()", null );
+		final int other = MethodRegistry.register( "unbalanced.other()", null );
+
+		final MethodExecutionStack stack = new DefaultMethodExecutionStack();
+		stack.methodExecutionStarting( outer );
+		stack.methodExecutionStarting( inner );
+		stack.methodExecutionStarting( inner );
+		sleep( 10 );
+		stack.methodExecutionEnded( other ); // never started
+		assertEquals( "Did not ignore the exit of a method which is not on the stack", 3, stack.timers.size() );
+		stack.methodExecutionEnded( outer ); // the inner executions never ended
+		assertEquals( "Did not unwind the stack", 0, stack.timers.size() );
+		stack.methodExecutionEnded( outer );
+		stack.methodExecutionEnded();
+		assertEquals( "Did not ignore exits on an empty stack", 0, stack.timers.size() );
+
+		final Set<MethodExecutionMetric> metrics = AggregatingMetricsCollector.INSTANCE.getAggregatedMetrics();
+		assertEquals( "Collected executions which never ended", 1, metrics.size() );
+		final MethodExecutionMetric metric = metrics.iterator().next();
+		assertEquals( "Did not collect the method which ended", "unbalanced.outer()", metric.getMethodSignature() );
+		assertEquals( "Did not collect a single invocation", 1, metric.getInvocations() );
+		assertInRange( "Did not count the discarded executions as callee time", 10, 100, n2m( metric.getTotalTime() - metric.getOwnTime() ) );
+		AggregatingMetricsCollector.INSTANCE.reset();
+	}
+
 	/**
 	 * Covers a catch block
 	 */
 	@Test
 	public void coverCatchBlock() {
+		MethodExecutionStack.STACKS_BY_THREAD.remove();
 		MethodExecutionStack.stackImplClass = FailingMethodExecutionStack.class;
 		Assert.assertNull( "Did not throw exception", MethodExecutionStack.getForThread() );
 		MethodExecutionStack.stackImplClass = DefaultMethodExecutionStack.class;
@@ -0,0 +1,80 @@
+package com.icehealthsystems.jtrace.runtime.methods;
+
+import static java.lang.Thread.sleep;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.util.TestUtils;
+import com.icehealthsystems.jtrace.util.TimeUtils;
+
+/**
+ * Method execution timer stack unit tests
+ *
+ * @author Matt MacLean
+ */
+public class MethodExecutionTimerStackTest {
+	/**
+	 * Verifies the stack times nested method executions
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void itTimesNestedExecutions() throws InterruptedException {
+		TimeUtils.timeCallable = TimeUtils.NANOS;
+
+		final MethodExecutionTimerStack timers = new MethodExecutionTimerStack();
+		timers.push( MethodRegistry.register( "method1()", null ) );
+		timers.startTiming();
+		sleep( 5 );
+		timers.pauseTiming();
+
+		timers.push( MethodRegistry.register( "method2()", "extra" ) );
+		timers.startTiming();
+		sleep( 5 );
+		timers.pauseTiming();
+		assertEquals( "Did not return the top method", MethodRegistry.register( "method2()", "extra" ), timers.getMethodId() );
+		final long calleeDuration = timers.getTotalExecutionDuration();
+		timers.pop();
+
+		timers.resumeTiming( calleeDuration );
+		sleep( 5 );
+		timers.pauseTiming();
+
+		assertEquals( "Did not return the top method after pop", MethodRegistry.register( "method1()", null ), timers.getMethodId() );
+		TestUtils.assertInRange( "method1() own time not in range", TestUtils.m2n( 10 ), TestUtils.m2n( 35 ), timers.getOwnExecutionDuration() );
+		TestUtils.assertInRange( "method1() total time not in range", TestUtils.m2n( 15 ), TestUtils.m2n( 40 ), timers.getTotalExecutionDuration() );
+	}
+
+	/**
+	 * Verifies the stack grows past it's initial capacity and resets reused slots
+	 */
+	@Test
+	public void itGrows() {
+		final MethodExecutionTimerStack timers = new MethodExecutionTimerStack();
+		for ( int i = 0; i < 100; i++ ) {
+			timers.push( i );
+			timers.startTiming();
+		}
+		assertEquals( "Did not grow to the expected depth", 100, timers.size() );
+		assertEquals( "Did not keep the top method", 99, timers.getMethodId() );
+
+		timers.pauseTiming();
+		timers.pop();
+		timers.push( 0 );
+		assertEquals( "Did not reset the own duration of a reused slot", 0, timers.getOwnExecutionDuration() );
+		assertEquals( "Did not reset the total duration of a reused slot", 0, timers.getTotalExecutionDuration() );
+	}
+
+	/**
+	 * Verifies the stack finds the method execution closest to the top
+	 */
+	@Test
+	public void itFindsMethodExecutions() {
+		final MethodExecutionTimerStack timers = new MethodExecutionTimerStack();
+		timers.push( 1 );
+		timers.push( 2 );
+		timers.push( 1 );
+		timers.push( 3 );
+		assertEquals( "Did not find the execution closest to the top", 2, timers.lastIndexOf( 1 ) );
+		assertEquals( "Did not find the bottom execution", 1, timers.lastIndexOf( 2 ) );
+		assertEquals( "Found a method which is not on the stack", -1, timers.lastIndexOf( 4 ) );
+	}
+}
@@ -0,0 +1,71 @@
+package com.icehealthsystems.jtrace.runtime.methods;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Method registry unit tests
+ *
+ * @author Matt MacLean
+ */
+public class MethodRegistryTest {
+	/**
+	 * Verifies a method keeps it's ID and different methods get different IDs
+	 */
+	@Test
+	public void itAssignsOneIdPerMethod() {
+		final int methodId = MethodRegistry.register( "registry.method1()", null );
+		assertEquals( "Did not return the same ID", methodId, MethodRegistry.register( "registry.method1()", null ) );
+		assertNotEquals( "Did not return a different ID for another extra", methodId, MethodRegistry.register( "registry.method1()", "extra" ) );
+		assertNotEquals( "Did not return a different ID for a colliding hash code", MethodRegistry.register( "Aa", null ), MethodRegistry.register( "BB", null ) );
+
+		assertEquals( "Did not return the method signature", "registry.method1()", MethodRegistry.getMethodSignature( methodId ) );
+		assertNull( "Did not return the extra", MethodRegistry.getExtra( methodId ) );
+		assertEquals( "Did not return the extra", "extra", MethodRegistry.getExtra( MethodRegistry.register( "registry.method1()", "extra" ) ) );
+	}
+
+	/**
+	 * Verifies the registry grows past it's initial capacity and handles unknown IDs
+	 */
+	@Test
+	public void itGrows() {
+		for ( int i = 0; i < 3000; i++ ) {
+			MethodRegistry.register( "registry.grow" + i + "()", null );
+		}
+		final int methodId = MethodRegistry.register( "registry.grow2999()", null );
+		assertEquals( "Did not return the method signature", "registry.grow2999()", MethodRegistry.getMethodSignature( methodId ) );
+		assertEquals( "Did not count the methods", methodId + 1, MethodRegistry.size() );
+
+		assertNull( "Did not return null for an unknown ID", MethodRegistry.getMethodSignature( MethodRegistry.size() ) );
+		assertNull( "Did not return null for a negative ID", MethodRegistry.getMethodSignature( -1 ) );
+		assertNull( "Did not return null for an unknown ID", MethodRegistry.getExtra( -1 ) );
+	}
+
+	/**
+	 * Verifies IDs assigned by an earlier run can be claimed unless they are taken
+	 */
+	@Test
+	public void itClaimsReservedIds() {
+		final int reserved = MethodRegistry.size() + 10;
+		MethodRegistry.reserve( reserved );
+		MethodRegistry.reserve( reserved - 5 );
+		assertEquals( "Did not register new methods above the reserved IDs", reserved, MethodRegistry.register( "registry.claim1()", null ) );
+
+		assertTrue( "Did not claim a reserved ID", MethodRegistry.claim( reserved - 1, "registry.claim2()", null ) );
+		assertEquals( "Did not register the claimed ID", reserved - 1, MethodRegistry.register( "registry.claim2()", null ) );
+		assertTrue( "Did not claim an ID a method already has", MethodRegistry.claim( reserved - 1, "registry.claim2()", null ) );
+		assertFalse( "Claimed another ID for a registered method", MethodRegistry.claim( reserved - 2, "registry.claim2()", null ) );
+		assertFalse( "Claimed an ID of another method", MethodRegistry.claim( reserved - 1, "registry.claim3()", null ) );
+		assertFalse( "Claimed a negative ID", MethodRegistry.claim( -1, "registry.claim3()", null ) );
+
+		final int beyond = MethodRegistry.size() + 5000;
+		assertTrue( "Did not claim an ID beyond the registered methods", MethodRegistry.claim( beyond, "registry.claim4()", null ) );
+		assertEquals( "Did not return the method signature", "registry.claim4()", MethodRegistry.getMethodSignature( beyond ) );
+		assertNull( "Did not leave the IDs below it unregistered", MethodRegistry.getMethodSignature( beyond - 1 ) );
+		assertEquals( "Did not register new methods above the claimed ID", beyond + 1, MethodRegistry.register( "registry.claim5()", null ) );
+	}
+}
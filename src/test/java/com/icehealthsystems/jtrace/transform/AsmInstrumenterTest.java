@@ -0,0 +1,204 @@
+package com.icehealthsystems.jtrace.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import com.icehealthsystems.jtrace.metrics.AggregatingMetricsCollector;
+import com.icehealthsystems.jtrace.metrics.MethodExecutionMetric;
+import com.icehealthsystems.jtrace.runtime.LogUtils;
+import com.icehealthsystems.jtrace.util.TestUtils;
+import com.icehealthsystems.samples.SampleApplication1;
+import com.icehealthsystems.samples.SampleApplication2;
+import com.icehealthsystems.samples.SampleApplication3;
+import com.icehealthsystems.samples.SampleApplication4;
+import com.icehealthsystems.samples.SampleApplication5;
+
+/**
+ * AsmInstrumenter unit tests
+ *
+ * @author Matt MacLean
+ */
+public class AsmInstrumenterTest {
+	/**
+	 * Name of the sample class
+	 */
+	private static final String SAMPLE_CLASS = SampleApplication1.class.getName();
+
+	/**
+	 * Verifies classes instrumented by both backends run and report the same method signatures
+	 * @throws IOException
+	 * @throws ReflectiveOperationException
+	 */
+	@Test
+	public void itReportsTheSameSignaturesAsJavassist() throws IOException, ReflectiveOperationException {
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final byte[] asmBytes = new AsmInstrumenter().instrument( null, SAMPLE_CLASS, classBytes, ClassFileScanner.findInstrumentableMethods( classBytes ) );
+		final byte[] javassistBytes = new JavassistInstrumenter().instrument( SampleApplication1.class.getClassLoader(), SAMPLE_CLASS, classBytes, null );
+
+		AggregatingMetricsCollector.INSTANCE.reset();
+		runSample( asmBytes );
+		runSample( javassistBytes );
+
+		final Map<String, Integer> invocations = new HashMap<>();
+		for ( final MethodExecutionMetric metric : AggregatingMetricsCollector.INSTANCE.getAggregatedMetrics() ) {
+			invocations.put( metric.getMethodSignature(), metric.getInvocations() );
+		}
+		assertEquals( "Did not report method1() from both backends", Integer.valueOf( 2 ), invocations.get( SAMPLE_CLASS + ".method1()" ) );
+		assertEquals( "Did not report method2(String, Long) from both backends", Integer.valueOf( 2 ), invocations.get( SAMPLE_CLASS + ".method2(String, Long)" ) );
+		assertEquals( "Did not report main(String[]) from both backends", Integer.valueOf( 2 ), invocations.get( SAMPLE_CLASS + ".main(String[])" ) );
+		assertFalse( "Reported an empty method", invocations.containsKey( SAMPLE_CLASS + ".emptyMethod()" ) );
+		AggregatingMetricsCollector.INSTANCE.reset();
+	}
+
+	/**
+	 * Verifies methods and constructors which throw still end their method executions with both backends
+	 * @throws IOException
+	 * @throws ReflectiveOperationException
+	 */
+	@Test
+	public void itEndsMethodExecutionsWhichThrow() throws IOException, ReflectiveOperationException {
+		final String className = SampleApplication5.class.getName();
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication5.class );
+		final byte[] asmBytes = new AsmInstrumenter().instrument( null, className, classBytes, ClassFileScanner.findInstrumentableMethods( classBytes ) );
+		final byte[] javassistBytes = new JavassistInstrumenter().instrument( SampleApplication5.class.getClassLoader(), className, classBytes, null );
+
+		AggregatingMetricsCollector.INSTANCE.reset();
+		new ByteArrayClassLoader().define( className, asmBytes ).getMethod( "main", String[].class ).invoke( null, (Object)new String[0] );
+		new ByteArrayClassLoader().define( className, javassistBytes ).getMethod( "main", String[].class ).invoke( null, (Object)new String[0] );
+
+		final Map<String, Integer> invocations = new HashMap<>();
+		for ( final MethodExecutionMetric metric : AggregatingMetricsCollector.INSTANCE.getAggregatedMetrics() ) {
+			invocations.put( metric.getMethodSignature(), metric.getInvocations() );
+		}
+		assertEquals( "Did not end the executions of a method which throws", Integer.valueOf( 6 ), invocations.get( className + ".fail(long, double)" ) );
+		assertEquals( "Did not end the executions of a method calling a method which throws", Integer.valueOf( 2 ), invocations.get( className + ".run()" ) );
+		// the constructor throwing from it's super constructor call is discarded when main() ends
+		assertEquals( "Did not end the executions of a constructor which throws", Integer.valueOf( 4 ), invocations.get( className + ".SampleApplication5(int, boolean)" ) );
+		assertEquals( "Did not end main(String[])", Integer.valueOf( 2 ), invocations.get( className + ".main(String[])" ) );
+		AggregatingMetricsCollector.INSTANCE.reset();
+	}
+
+	/**
+	 * Defines and runs an instrumented copy of the sample class
+	 * @param classBytes
+	 * @throws ReflectiveOperationException
+	 */
+	private static void runSample( final byte[] classBytes ) throws ReflectiveOperationException {
+		final Class<?> sample = new ByteArrayClassLoader().define( SAMPLE_CLASS, classBytes );
+		final Object instance = sample.newInstance();
+		sample.getMethod( "method1" ).invoke( instance );
+		sample.getMethod( "method2", String.class, Long.class ).invoke( instance, "a", 1L );
+		sample.getMethod( "emptyMethod" ).invoke( instance );
+		sample.getMethod( "main", String[].class ).invoke( null, (Object)new String[0] );
+	}
+
+	/**
+	 * Verifies all methods with code are instrumented when the class was not scanned
+	 * @throws IOException
+	 * @throws ReflectiveOperationException
+	 */
+	@Test
+	public void itInstrumentsUnscannedClasses() throws IOException, ReflectiveOperationException {
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final byte[] asmBytes = new AsmInstrumenter().instrument( null, SAMPLE_CLASS, classBytes, null );
+		assertTrue( "Did not instrument", asmBytes.length > classBytes.length );
+		runSample( asmBytes );
+	}
+
+	/**
+	 * Verifies class files ASM can not read are returned as is
+	 */
+	@Test
+	public void itReturnsUnreadableClassFiles() {
+		final byte[] classBytes = "a".getBytes();
+		assertSame( "Did not return the original class file bytes", classBytes, new AsmInstrumenter().instrument( null, "OtherClass", classBytes, null ) );
+	}
+
+	/**
+	 * Verifies method IDs are pushed with the smallest instruction
+	 */
+	@Test
+	public void itPushesMethodIds() {
+		final List<String> pushes = new ArrayList<>();
+		final MethodVisitor recorder = new MethodVisitor( Opcodes.ASM9 ) {
+			@Override
+			public void visitInsn( final int opcode ) {
+				pushes.add( "insn " + opcode );
+			}
+
+			@Override
+			public void visitIntInsn( final int opcode, final int operand ) {
+				pushes.add( "int " + opcode + " " + operand );
+			}
+
+			@Override
+			public void visitLdcInsn( final Object value ) {
+				pushes.add( "ldc " + value );
+			}
+		};
+		new ProbeMethodVisitor( recorder, Opcodes.ACC_PUBLIC, "method", "()V", 3 ).visitCode();
+		new ProbeMethodVisitor( recorder, Opcodes.ACC_PUBLIC, "method", "()V", 100 ).visitCode();
+		new ProbeMethodVisitor( recorder, Opcodes.ACC_PUBLIC, "method", "()V", 1000 ).visitCode();
+		new ProbeMethodVisitor( recorder, Opcodes.ACC_PUBLIC, "method", "()V", 100_000 ).visitCode();
+		assertEquals( "Did not push the method IDs", "[insn " + ( Opcodes.ICONST_0 + 3 ) + ", int " + Opcodes.BIPUSH + " 100, int " + Opcodes.SIPUSH + " 1000, ldc 100000]", pushes.toString() );
+	}
+
+	/**
+	 * Compares the transform throughput (classes per second) and the size growth of
+	 * instrumented methods of the Javassist and ASM backends
+	 * @throws IOException
+	 */
+	@Test
+	public void benchmarkAgainstJavassist() throws IOException {
+		final Class<?>[] classes = { SampleApplication1.class, SampleApplication2.class, SampleApplication3.class, SampleApplication4.class, ArrayList.class, HashMap.class,
+			ConcurrentHashMap.class, String.class, StringBuilder.class, java.util.TreeMap.class, java.util.LinkedList.class, java.util.regex.Pattern.class };
+		final List<byte[]> classBytes = new ArrayList<>();
+		int methods = 0;
+		for ( final Class<?> clazz : classes ) {
+			final byte[] bytes = TestUtils.readClassBytes( clazz );
+			classBytes.add( bytes );
+			methods += ClassFileScanner.findInstrumentableMethods( bytes ).size();
+		}
+
+		final Instrumenter javassist = new JavassistInstrumenter();
+		final Instrumenter asm = new AsmInstrumenter();
+		final long[] javassistResult = benchmark( javassist, classes, classBytes );
+		final long[] asmResult = benchmark( asm, classes, classBytes );
+
+		LogUtils.println( "Javassist: " + classes.length * 1_000_000_000L * 5 / Math.max( 1, javassistResult[0] ) + " classes/sec, " + javassistResult[1] / methods + " bytes added per method" );
+		LogUtils.println( "ASM: " + classes.length * 1_000_000_000L * 5 / Math.max( 1, asmResult[0] ) + " classes/sec, " + asmResult[1] / methods + " bytes added per method" );
+		assertTrue( "ASM instrumented methods grew more than Javassist's", asmResult[1] < javassistResult[1] );
+	}
+
+	/**
+	 * Instruments the given classes 5 times (after warming up)
+	 * @param instrumenter
+	 * @param classes
+	 * @param classBytes
+	 * @return the time taken in nanoseconds and the number of bytes added to the classes of one round
+	 */
+	private static long[] benchmark( final Instrumenter instrumenter, final Class<?>[] classes, final List<byte[]> classBytes ) {
+		long growth = 0;
+		for ( int i = 0; i < classes.length; i++ ) {
+			growth += instrumenter.instrument( SampleApplication1.class.getClassLoader(), classes[i].getName(), classBytes.get( i ), ClassFileScanner.findInstrumentableMethods( classBytes.get( i ) ) ).length - classBytes.get( i ).length;
+		}
+
+		final long start = System.nanoTime();
+		for ( int round = 0; round < 5; round++ ) {
+			for ( int i = 0; i < classes.length; i++ ) {
+				instrumenter.instrument( SampleApplication1.class.getClassLoader(), classes[i].getName(), classBytes.get( i ), ClassFileScanner.findInstrumentableMethods( classBytes.get( i ) ) );
+			}
+		}
+		return new long[] { System.nanoTime() - start, growth };
+	}
+}
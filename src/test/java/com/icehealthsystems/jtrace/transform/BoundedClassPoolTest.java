@@ -0,0 +1,62 @@
+package com.icehealthsystems.jtrace.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+/**
+ * Bounded class pool unit tests
+ *
+ * @author Matt MacLean
+ */
+public class BoundedClassPoolTest {
+	/**
+	 * Verifies the least recently used classes are evicted
+	 * @throws NotFoundException
+	 */
+	@Test
+	public void itEvictsLeastRecentlyUsedClasses() throws NotFoundException {
+		final BoundedClassPool pool = new BoundedClassPool( 2 );
+		pool.appendSystemPath();
+
+		final CtClass string = pool.get( "java.lang.String" );
+		pool.get( "java.lang.Integer" );
+		assertSame( "Did not cache a class", string, pool.get( "java.lang.String" ) );
+		pool.get( "java.lang.Long" );
+
+		assertEquals( "Did not cap the cached classes", 2, pool.getCachedClassCount() );
+		assertNull( "Did not evict the least recently used class", pool.getCached( "java.lang.Integer" ) );
+		assertSame( "Evicted a recently used class", string, pool.getCached( "java.lang.String" ) );
+		assertNotNull( "Did not keep primitive types", pool.get( "int" ) );
+	}
+
+	/**
+	 * Verifies modified classes are not evicted and detached classes are removed
+	 * @throws NotFoundException
+	 */
+	@Test
+	public void itKeepsModifiedClasses() throws NotFoundException {
+		final BoundedClassPool pool = new BoundedClassPool( 1 );
+		pool.appendSystemPath();
+
+		final CtClass modified = pool.makeClass( "com.example.Modified" );
+		pool.get( "java.lang.String" );
+		assertSame( "Evicted a modified class", modified, pool.getCached( "com.example.Modified" ) );
+
+		modified.detach();
+		assertNull( "Did not remove a detached class", pool.getCached( "com.example.Modified" ) );
+		assertEquals( "Did not evict down to the cap", 1, pool.getCachedClassCount() );
+	}
+
+	/**
+	 * Covers the default constructor
+	 */
+	@Test
+	public void itHasDefaultCapacity() {
+		assertEquals( "Did not start empty", 0, new BoundedClassPool().getCachedClassCount() );
+	}
+}
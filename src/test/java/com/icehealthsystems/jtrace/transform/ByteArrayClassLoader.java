@@ -0,0 +1,25 @@
+package com.icehealthsystems.jtrace.transform;
+
+/**
+ * A class loader defining classes from class file bytes, for running instrumented classes in unit tests
+ *
+ * @author Matt MacLean
+ */
+public class ByteArrayClassLoader extends ClassLoader {
+	/**
+	 * Creates a class loader delegating to the class loader of the unit tests
+	 */
+	public ByteArrayClassLoader() {
+		super( ByteArrayClassLoader.class.getClassLoader() );
+	}
+
+	/**
+	 * Defines a class
+	 * @param name
+	 * @param classBytes
+	 * @return
+	 */
+	public Class<?> define( final String name, final byte[] classBytes ) {
+		return defineClass( name, classBytes, 0, classBytes.length );
+	}
+}
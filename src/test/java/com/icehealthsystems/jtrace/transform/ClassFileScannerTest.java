@@ -0,0 +1,141 @@
+package com.icehealthsystems.jtrace.transform;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.util.TestUtils;
+import com.icehealthsystems.samples.SampleApplication1;
+
+/**
+ * Class file scanner unit tests
+ *
+ * @author Matt MacLean
+ */
+public class ClassFileScannerTest {
+	/**
+	 * Verifies classes with method bodies need instrumentation
+	 * @throws IOException
+	 */
+	@Test
+	public void itFindsMethodsToInstrument() throws IOException {
+		assertTrue( "Did not find methods of a class", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( SampleApplication1.class ) ) );
+		assertTrue( "Did not find a constructor with arguments", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( ConstructorClass.class ) ) );
+		assertTrue( "Did not find a method using long constants", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( ConstantsClass.class ) ) );
+		assertTrue( "Did not find a default method", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( DefaultMethodInterface.class ) ) );
+	}
+
+	/**
+	 * Verifies classes without anything to instrument are skipped
+	 * @throws IOException
+	 */
+	@Test
+	public void itSkipsClassesWithoutMethodsToInstrument() throws IOException {
+		assertFalse( "Did not skip an interface", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( Runnable.class ) ) );
+		assertFalse( "Did not skip an annotation", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( Test.class ) ) );
+		assertFalse( "Did not skip an empty class", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( EmptyClass.class ) ) );
+		assertFalse( "Did not skip an abstract class", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( AbstractClass.class ) ) );
+		assertFalse( "Did not skip a static initializer", ClassFileScanner.needsInstrumentation( TestUtils.readClassBytes( StaticInitializerClass.class ) ) );
+		assertFalse( "Did not skip a non class file", ClassFileScanner.needsInstrumentation( "a".getBytes() ) );
+		assertFalse( "Did not skip a class file with the wrong magic", ClassFileScanner.needsInstrumentation( "abcdefgh".getBytes() ) );
+	}
+
+	/**
+	 * Verifies class files which can not be scanned are left to javassist
+	 * @throws IOException
+	 */
+	@Test
+	public void itFallsBackOnBrokenClassFiles() throws IOException {
+		final byte[] classBytes = TestUtils.readClassBytes( EmptyClass.class );
+		assertTrue( "Did not fall back on a truncated class file", ClassFileScanner.needsInstrumentation( Arrays.copyOf( classBytes, classBytes.length / 2 ) ) );
+
+		final byte[] unknownTag = Arrays.copyOf( classBytes, classBytes.length );
+		unknownTag[10] = 99;
+		assertTrue( "Did not fall back on an unknown constant", ClassFileScanner.needsInstrumentation( unknownTag ) );
+	}
+
+	/**
+	 * Class with only a default constructor
+	 */
+	static class EmptyClass {
+		// NO OP
+	}
+
+	/**
+	 * Class with only abstract and empty methods
+	 */
+	abstract static class AbstractClass {
+		/**
+		 * Abstract method
+		 */
+		abstract void method();
+
+		/**
+		 * Empty method
+		 */
+		void emptyMethod() {
+			// NO OP
+		}
+	}
+
+	/**
+	 * Class with only a static initializer
+	 */
+	static class StaticInitializerClass {
+		/**
+		 * Initialized field
+		 */
+		static final long[] VALUES = { System.nanoTime() };
+	}
+
+	/**
+	 * Class with a constructor which does more than calling super()
+	 */
+	static class ConstructorClass {
+		/**
+		 * Field set by the constructor
+		 */
+		private final transient String value;
+
+		/**
+		 * Constructor with an argument
+		 * @param value
+		 */
+		ConstructorClass( final String value ) {
+			this.value = value;
+		}
+
+		@Override
+		public String toString() {
+			return value;
+		}
+	}
+
+	/**
+	 * Class with long and double constants in it's constant pool
+	 */
+	static class ConstantsClass {
+		/**
+		 * Method using long and double constants
+		 * @param value
+		 * @return
+		 */
+		static double compute( final long value ) {
+			return value * 123_456_789_012L * 1.5e300;
+		}
+	}
+
+	/**
+	 * Interface with a default method
+	 */
+	interface DefaultMethodInterface {
+		/**
+		 * Default method
+		 * @return
+		 */
+		default String name() {
+			return "name";
+		}
+	}
+}
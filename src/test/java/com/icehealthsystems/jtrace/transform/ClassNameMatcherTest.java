@@ -0,0 +1,101 @@
+package com.icehealthsystems.jtrace.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.runtime.LogUtils;
+
+/**
+ * Class name matcher unit tests
+ *
+ * @author Matt MacLean
+ */
+public class ClassNameMatcherTest {
+	/**
+	 * Patterns covering literal prefixes, literal names and regular expressions
+	 */
+	private static final String[] PATTERNS = { "com\\.MyClass.*", "^com\\.acme\\.web\\..*$", "com\\.Exact", "^$", "com.any.Dot.*", "org\\.(foo|bar)\\..*", "net\\.x\\.*", "io\\.\\w+" };
+
+	/**
+	 * Class names to match
+	 */
+	private static final String[] CLASS_NAMES = { "com.MyClass", "com.MyClass2", "com.MyClas", "com.acme.web.Servlet", "com.acme.webby", "com.Exact", "com.Exact2", "com.Exac", "",
+		"comXanyXDotY", "com.any.Dot", "org.foo.A", "org.baz.A", "net.x.", "net.x...", "net.x.y", "io.abc", "io.a.b" };
+
+	/**
+	 * Verifies the matcher matches the same class names as String.matches
+	 */
+	@Test
+	public void itMatchesLikeStringMatches() {
+		final ClassNameMatcher matcher = new ClassNameMatcher( PATTERNS );
+		for ( final String className : CLASS_NAMES ) {
+			assertEquals( "Did not match " + className + " like String.matches", legacyMatches( className, PATTERNS ), matcher.matches( className ) );
+		}
+	}
+
+	/**
+	 * Verifies a match all prefix and no patterns
+	 */
+	@Test
+	public void itMatchesEverythingOrNothing() {
+		assertTrue( "Did not match everything", new ClassNameMatcher( ".*" ).matches( "any.Class" ) );
+		assertFalse( "Matched without patterns", new ClassNameMatcher().matches( "any.Class" ) );
+		assertFalse( "Matched a trailing backslash", new ClassNameMatcher( "a\\\\" ).matches( "a" ) );
+		assertTrue( "Did not match an escaped backslash", new ClassNameMatcher( "a\\\\" ).matches( "a\\" ) );
+	}
+
+	/**
+	 * Compares the time it takes to decide which of 40k class names (a large app server boot)
+	 * should be profiled with the matcher and with the previous String.matches implementation
+	 */
+	@Test
+	public void benchmarkAgainstStringMatches() {
+		final String[] includes = { "com\\.acme\\..*", "org\\.acme\\..*" };
+		final String[] excludes = { "com\\.acme\\.generated\\..*", "^$" };
+		final String[] classNames = new String[40_000];
+		for ( int i = 0; i < classNames.length; i++ ) {
+			classNames[i] = ( i % 3 == 0 ? "com.acme." : i % 3 == 1 ? "org.springframework." : "com.acme.generated." ) + "pkg" + ( i % 97 ) + ".Class" + i;
+		}
+
+		final ClassNameMatcher includesMatcher = new ClassNameMatcher( includes );
+		final ClassNameMatcher excludesMatcher = new ClassNameMatcher( excludes );
+
+		int legacyCount = 0;
+		final long legacyStart = System.nanoTime();
+		for ( final String className : classNames ) {
+			if ( !className.matches( "com\\.icehealthsystems\\.jtrace\\..*" ) && legacyMatches( className, includes ) && !legacyMatches( className, excludes ) ) {
+				legacyCount++;
+			}
+		}
+		final long legacyTime = System.nanoTime() - legacyStart;
+
+		int count = 0;
+		final long start = System.nanoTime();
+		for ( final String className : classNames ) {
+			if ( !className.startsWith( "com.icehealthsystems.jtrace." ) && includesMatcher.matches( className ) && !excludesMatcher.matches( className ) ) {
+				count++;
+			}
+		}
+		final long time = System.nanoTime() - start;
+
+		LogUtils.println( "Matched " + classNames.length + " class names: String.matches " + legacyTime / 1_000_000 + "ms, ClassNameMatcher " + time / 1_000_000 + "ms" );
+		assertEquals( "Did not match the same class names", legacyCount, count );
+		assertTrue( "Matcher was not faster than String.matches", time < legacyTime );
+	}
+
+	/**
+	 * The previous implementation, compiling every pattern for every class name
+	 * @param className
+	 * @param regexes
+	 * @return
+	 */
+	private static boolean legacyMatches( final String className, final String... regexes ) {
+		for ( final String regex : regexes ) {
+			if ( className.matches( regex ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,112 @@
+package com.icehealthsystems.jtrace.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.runtime.methods.MethodRegistry;
+import com.icehealthsystems.jtrace.util.TestUtils;
+import com.icehealthsystems.samples.SampleApplication1;
+
+/**
+ * InstrumentedClassCache unit tests
+ *
+ * @author Matt MacLean
+ */
+public class InstrumentedClassCacheTest {
+	/**
+	 * Internal name of the sample class
+	 */
+	private static final String SAMPLE_CLASS = "com/icehealthsystems/samples/SampleApplication1";
+
+	/**
+	 * Verifies cached classes are read back by later caches with the same configuration
+	 * @throws IOException
+	 */
+	@Test
+	public void itCachesInstrumentedClasses() throws IOException {
+		final File directory = Files.createTempDirectory( "jtrace-cache" ).toFile();
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final byte[] instrumentedBytes = cacheSample( new InstrumentedClassCache( directory, "config" ), classBytes );
+
+		final InstrumentedClassCache cache = new InstrumentedClassCache( directory, "config" );
+		assertArrayEquals( "Did not read the cached class", instrumentedBytes, cache.get( classBytes ) );
+		assertNull( "Read a class which was not cached", cache.get( "a".getBytes() ) );
+		assertNull( "Read a class cached with another configuration", new InstrumentedClassCache( directory, "other config" ).get( classBytes ) );
+		assertTrue( "Did not reserve the cached method IDs", MethodRegistry.size() >= ByteBuffer.wrap( Files.readAllBytes( directory.toPath().resolve( "reserved-method-ids" ) ) ).getInt() );
+	}
+
+	/**
+	 * Verifies cached classes whose method IDs are taken by other methods are not used
+	 * @throws IOException
+	 */
+	@Test
+	public void itMissesWhenMethodIdsAreTaken() throws IOException {
+		final File directory = Files.createTempDirectory( "jtrace-cache" ).toFile();
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final InstrumentedClassCache cache = new InstrumentedClassCache( directory, "config" );
+		cacheSample( cache, classBytes );
+
+		// another JVM assigned the IDs to other methods
+		final Path entry = cache.getEntryPath( classBytes );
+		final String content = new String( Files.readAllBytes( entry ), StandardCharsets.ISO_8859_1 );
+		Files.write( entry, content.replace( ".method1()", ".methodX()" ).getBytes( StandardCharsets.ISO_8859_1 ) );
+		assertNull( "Read a class with IDs of other methods", cache.get( classBytes ) );
+	}
+
+	/**
+	 * Verifies unreadable cache entries are ignored
+	 * @throws IOException
+	 */
+	@Test
+	public void itIgnoresCorruptEntries() throws IOException {
+		final File directory = Files.createTempDirectory( "jtrace-cache" ).toFile();
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final InstrumentedClassCache cache = new InstrumentedClassCache( directory, "config" );
+
+		Files.write( cache.getEntryPath( classBytes ), "not an entry".getBytes() );
+		assertNull( "Read an entry of another format", cache.get( classBytes ) );
+
+		Files.write( cache.getEntryPath( classBytes ), new byte[] { 0x4A, 0x54, 0x43, 0x01, 0, 0, 0, 1 } );
+		assertNull( "Read a truncated entry", cache.get( classBytes ) );
+	}
+
+	/**
+	 * Verifies failing to write an entry leaves the cache usable
+	 * @throws IOException
+	 */
+	@Test
+	public void itSurvivesWriteErrors() throws IOException {
+		final File directory = Files.createTempDirectory( "jtrace-cache" ).toFile();
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final InstrumentedClassCache cache = new InstrumentedClassCache( directory, "config" );
+
+		// a directory in the way of the entry
+		Files.createDirectory( cache.getEntryPath( classBytes ) );
+		Files.createFile( cache.getEntryPath( classBytes ).resolve( "file" ) );
+		cacheSample( cache, classBytes );
+		assertNull( "Read an entry which could not be written", cache.get( classBytes ) );
+		assertEquals( "Left a temporary file behind", 2, directory.list().length );
+	}
+
+	/**
+	 * Instruments and caches the sample class
+	 * @param cache
+	 * @param classBytes
+	 * @return the instrumented class
+	 */
+	private static byte[] cacheSample( final InstrumentedClassCache cache, final byte[] classBytes ) {
+		final Set<String> methods = ClassFileScanner.findInstrumentableMethods( classBytes );
+		final byte[] instrumentedBytes = new AsmInstrumenter().instrument( null, SampleApplication1.class.getName(), classBytes, methods );
+		cache.put( classBytes, instrumentedBytes, SAMPLE_CLASS, SampleApplication1.class.getName(), methods );
+		return instrumentedBytes;
+	}
+}
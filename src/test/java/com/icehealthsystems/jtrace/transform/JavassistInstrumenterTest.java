@@ -0,0 +1,143 @@
+package com.icehealthsystems.jtrace.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import java.lang.instrument.IllegalClassFormatException;
+import org.junit.Test;
+import com.icehealthsystems.jtrace.runtime.AgentArguments;
+import com.icehealthsystems.jtrace.runtime.Config;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+/**
+ * JavassistInstrumenter unit tests
+ * 
+ * @author Matt MacLean
+ */
+public class JavassistInstrumenterTest {
+	/**
+	 * Covers the first exception block in transformBehavior
+	 * @throws IllegalClassFormatException 
+	 */
+	@Test
+	public void itCoversExceptionBlock() throws IllegalClassFormatException {
+		Config.getInstance().setArgs( new AgentArguments( "disableMethodProfiling" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		new JavassistInstrumenter().transformBehavior( "notempty", new CtBehavior( null, null ) {
+			@Override
+			public CtClass[] getParameterTypes() throws NotFoundException {
+				throw new NotFoundException( "unit tests" );
+			}
+
+			@Override
+			public String getName() {
+				return null;
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return false;
+			}
+
+			@Override
+			public String getLongName() {
+				return null;
+			}
+		} );
+		final byte[] result = transformer.transform( null, null, null, null, "a".getBytes() );
+		assertNotNull( "Did not return expected class file bytes (a)", result );
+		assertEquals( "Did not return expected class file bytes (b)", "a", new String( result ) );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Covers the second exception block in transformBehavior
+	 * @throws IllegalClassFormatException 
+	 */
+	@Test
+	public void itCoversSecondExceptionBlock() throws IllegalClassFormatException {
+		Config.getInstance().setArgs( new AgentArguments( "disableMethodProfiling" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		new JavassistInstrumenter().transformBehavior( "notempty", new CtBehavior( null, null ) {
+			@Override
+			public CtClass[] getParameterTypes() throws NotFoundException {
+				return new CtClass[0];
+			}
+
+			@Override
+			public String getName() {
+				return "unitTests";
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return false;
+			}
+
+			@Override
+			public String getLongName() {
+				return "unitTests;";
+			}
+
+			@Override
+			public void insertBefore( final String src ) throws CannotCompileException {
+				throw new CannotCompileException( "cannot compile" );
+			}
+		} );
+		final byte[] result = transformer.transform( null, null, null, null, "a".getBytes() );
+		assertNotNull( "Did not return expected class file bytes (a)", result );
+		assertEquals( "Did not return expected class file bytes (b)", "a", new String( result ) );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Ensures empty methods are skipped
+	 */
+	@Test
+	public void itSkipsEmptyMethods() throws IllegalClassFormatException {
+		final MethodTransformer transformer = new MethodTransformer();
+		new JavassistInstrumenter().transformBehavior( "notempty", new CtBehavior( null, null ) {
+			@Override
+			public CtClass[] getParameterTypes() throws NotFoundException {
+				return new CtClass[0];
+			}
+
+			@Override
+			public String getName() {
+				return "unitTests";
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return true;
+			}
+
+			@Override
+			public String getLongName() {
+				return "unitTests;";
+			}
+
+			@Override
+			public void insertBefore( final String src ) throws CannotCompileException {
+				throw new CannotCompileException( "cannot compile" );
+			}
+		} );
+		final byte[] result = transformer.transform( null, null, null, null, "a".getBytes() );
+		assertNotNull( "Did not return expected class file bytes (a)", result );
+		assertEquals( "Did not return expected class file bytes (b)", "a", new String( result ) );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Covers the exception block of transforming a class file javassist can not read
+	 */
+	@Test
+	public void itCoversClassFileExceptionBlock() {
+		final byte[] classBytes = "a".getBytes();
+		assertSame( "Did not return the original class file bytes", classBytes, new JavassistInstrumenter().transform( new ClassPool(), "OtherClass", classBytes ) );
+	}
+}
@@ -0,0 +1,29 @@
+package com.icehealthsystems.jtrace.transform;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Method signatures unit tests
+ *
+ * @author Matt MacLean
+ */
+public class MethodSignaturesTest {
+	/**
+	 * Verifies signatures use simple parameter type names
+	 */
+	@Test
+	public void itFormatsSignatures() {
+		assertEquals( "Did not format without parameters", "a.B.method()", MethodSignatures.format( "a.B", "method" ) );
+		assertEquals( "Did not format with parameters", "a.B.B(String, int, Entry[], Map$Entry)", MethodSignatures.format( "a.B", "B", "java.lang.String", "int", "x/y/Entry[]", "java.util.Map$Entry" ) );
+	}
+
+	/**
+	 * Verifies signatures are built from method descriptors the same way
+	 */
+	@Test
+	public void itFormatsDescriptors() {
+		assertEquals( "Did not format a method", "a.B.method(String, long, int[])", MethodSignatures.fromDescriptor( "a.B", "a/B$C", "method", "(Ljava/lang/String;J[I)V" ) );
+		assertEquals( "Did not name a constructor after it's class", "a.B.B$C(Map$Entry)", MethodSignatures.fromDescriptor( "a.B", "a/B$C", "<init>", "(Ljava/util/Map$Entry;)V" ) );
+	}
+}
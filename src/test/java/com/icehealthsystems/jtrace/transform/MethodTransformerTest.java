@@ -1,17 +1,27 @@
 package com.icehealthsystems.jtrace.transform;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import java.io.IOException;
 import java.lang.instrument.IllegalClassFormatException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 import com.icehealthsystems.jtrace.runtime.AgentArguments;
 import com.icehealthsystems.jtrace.runtime.Config;
-import javassist.CannotCompileException;
-import javassist.CtBehavior;
-import javassist.CtClass;
-import javassist.NotFoundException;
+import com.icehealthsystems.jtrace.util.TestUtils;
+import com.icehealthsystems.samples.SampleApplication1;
 
 /**
  * MethodTransformer unit tests
@@ -71,115 +81,149 @@ public class MethodTransformerTest {
 	}
 
 	/**
-	 * Covers the first exception block in transformBehavior
-	 * @throws IllegalClassFormatException 
+	 * Verifies only classes with methods to instrument are parsed and transformed
+	 * @throws IllegalClassFormatException
+	 * @throws IOException
 	 */
 	@Test
-	public void itCoversExceptionBlock() throws IllegalClassFormatException {
-		Config.getInstance().setArgs( new AgentArguments( "disableMethodProfiling" ) );
+	public void itTransformsOnlyClassesWithMethodsToInstrument() throws IllegalClassFormatException, IOException {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*,includes=java\\.lang\\.Runnable" ) );
 		final MethodTransformer transformer = new MethodTransformer();
-		transformer.transformBehavior( "notempty", new CtBehavior( null, null ) {
-			@Override
-			public CtClass[] getParameterTypes() throws NotFoundException {
-				throw new NotFoundException( "unit tests" );
-			}
 
-			@Override
-			public String getName() {
-				return null;
-			}
-
-			@Override
-			public boolean isEmpty() {
-				return false;
-			}
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final byte[] result = transformer.transform( Thread.currentThread().getContextClassLoader(), "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes );
+		assertFalse( "Did not transform a class with methods", Arrays.equals( classBytes, result ) );
 
-			@Override
-			public String getLongName() {
-				return null;
-			}
-		} );
-		final byte[] result = transformer.transform( null, null, null, null, "a".getBytes() );
-		assertNotNull( "Did not return expected class file bytes (a)", result );
-		assertEquals( "Did not return expected class file bytes (b)", "a", new String( result ) );
+		final byte[] interfaceBytes = TestUtils.readClassBytes( Runnable.class );
+		assertSame( "Transformed an interface", interfaceBytes, transformer.transform( Thread.currentThread().getContextClassLoader(), "java/lang/Runnable", null, null, interfaceBytes ) );
 		Config.getInstance().setArgs( null );
 	}
 
 	/**
-	 * Covers the second exception block in transformBehavior
-	 * @throws IllegalClassFormatException 
+	 * Redeploys a "webapp" many times and verifies the transformer does not keep the
+	 * class loaders of undeployed webapps, or their class pools, alive
+	 * @throws IllegalClassFormatException
+	 * @throws IOException
+	 * @throws InterruptedException
 	 */
 	@Test
-	public void itCoversSecondExceptionBlock() throws IllegalClassFormatException {
-		Config.getInstance().setArgs( new AgentArguments( "disableMethodProfiling" ) );
+	@SuppressWarnings( "PMD.DoNotCallGarbageCollectionExplicitly" )
+	public void itReleasesClassPoolsOfUndeployedClassLoaders() throws IllegalClassFormatException, IOException, InterruptedException {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*" ) );
 		final MethodTransformer transformer = new MethodTransformer();
-		transformer.transformBehavior( "notempty", new CtBehavior( null, null ) {
-			@Override
-			public CtClass[] getParameterTypes() throws NotFoundException {
-				return new CtClass[0];
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final URL[] webapp = { SampleApplication1.class.getProtectionDomain().getCodeSource().getLocation() };
+		final Runtime runtime = Runtime.getRuntime();
+
+		final List<WeakReference<ClassLoader>> loaders = new ArrayList<>();
+		long usedAfterFirstDeploys = 0;
+		for ( int i = 0; i < 100; i++ ) {
+			try ( URLClassLoader loader = new URLClassLoader( webapp, MethodTransformerTest.class.getClassLoader() ) ) {
+				final byte[] result = transformer.transform( loader, "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes );
+				assertFalse( "Did not transform the class of deployment " + i, Arrays.equals( classBytes, result ) );
+				loaders.add( new WeakReference<>( loader ) );
 			}
-
-			@Override
-			public String getName() {
-				return "unitTests";
+			if ( i == 9 ) {
+				System.gc();
+				usedAfterFirstDeploys = runtime.totalMemory() - runtime.freeMemory();
 			}
+		}
+
+		for ( int i = 0; i < 10 && ( (JavassistInstrumenter)transformer.instrumenter ).classPools.size() > 0; i++ ) {
+			System.gc();
+			Thread.sleep( 10 );
+		}
+		assertEquals( "Did not release the class pools", 0, ( (JavassistInstrumenter)transformer.instrumenter ).classPools.size() );
+		assertEquals( "Did not release the profiled classes", 0, transformer.profilingClasses.size() );
+		for ( final WeakReference<ClassLoader> loader : loaders ) {
+			assertEquals( "Did not release a class loader", null, loader.get() );
+		}
+
+		final long used = runtime.totalMemory() - runtime.freeMemory();
+		TestUtils.assertInRange( "Heap footprint grew across redeploys", 0, usedAfterFirstDeploys + 16 * 1024 * 1024, used );
+		Config.getInstance().setArgs( null );
+	}
 
-			@Override
-			public boolean isEmpty() {
-				return false;
-			}
+	/**
+	 * Verifies the instrumentation backend is selected with the backend argument
+	 * @throws IllegalClassFormatException
+	 * @throws IOException
+	 */
+	@Test
+	public void itSelectsTheBackend() throws IllegalClassFormatException, IOException {
+		assertTrue( "Did not default to javassist", new MethodTransformer().instrumenter instanceof JavassistInstrumenter );
 
-			@Override
-			public String getLongName() {
-				return "unitTests;";
-			}
+		Config.getInstance().setArgs( new AgentArguments( "backend=asm,includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		assertTrue( "Did not select asm", transformer.instrumenter instanceof AsmInstrumenter );
 
-			@Override
-			public void insertBefore( final String src ) throws CannotCompileException {
-				throw new CannotCompileException( "cannot compile" );
-			}
-		} );
-		final byte[] result = transformer.transform( null, null, null, null, "a".getBytes() );
-		assertNotNull( "Did not return expected class file bytes (a)", result );
-		assertEquals( "Did not return expected class file bytes (b)", "a", new String( result ) );
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final byte[] result = transformer.transform( Thread.currentThread().getContextClassLoader(), "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes );
+		assertFalse( "Did not transform with asm", Arrays.equals( classBytes, result ) );
 		Config.getInstance().setArgs( null );
 	}
 
 	/**
-	 * Ensures empty methods are skipped
+	 * Verifies instrumented classes are cached when a cache directory is configured
+	 * @throws IllegalClassFormatException
+	 * @throws IOException
 	 */
 	@Test
-	public void itSkipsEmptyMethods() throws IllegalClassFormatException {
-		final MethodTransformer transformer = new MethodTransformer();
-		transformer.transformBehavior( "notempty", new CtBehavior( null, null ) {
-			@Override
-			public CtClass[] getParameterTypes() throws NotFoundException {
-				return new CtClass[0];
-			}
+	public void itCachesInstrumentedClasses() throws IllegalClassFormatException, IOException {
+		assertNull( "Cached without a cache directory", new MethodTransformer().cache );
 
-			@Override
-			public String getName() {
-				return "unitTests";
-			}
+		final String cacheDir = Files.createTempDirectory( "jtrace-cache" ).toString();
+		Config.getInstance().setArgs( new AgentArguments( "backend=asm,cacheDir=" + cacheDir + ",includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		final byte[] result = new MethodTransformer().transform( Thread.currentThread().getContextClassLoader(), "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes );
 
-			@Override
-			public boolean isEmpty() {
-				return true;
-			}
+		// a restarted JVM
+		final MethodTransformer transformer = new MethodTransformer();
+		assertNotNull( "Did not create the cache", transformer.cache );
+		assertArrayEquals( "Did not return the cached class", result, transformer.transform( Thread.currentThread().getContextClassLoader(), "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes ) );
+		Config.getInstance().setArgs( null );
+	}
 
-			@Override
-			public String getLongName() {
-				return "unitTests;";
-			}
+	/**
+	 * Verifies classes are still transformed when the cache directory can not be created
+	 * @throws IllegalClassFormatException
+	 * @throws IOException
+	 */
+	@Test
+	public void itTransformsWithoutAnUnusableCache() throws IllegalClassFormatException, IOException {
+		final Path file = Files.createTempFile( "jtrace-cache", ".tmp" );
+		Config.getInstance().setArgs( new AgentArguments( "cacheDir=" + file + ",includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		assertNull( "Created a cache in a file", transformer.cache );
 
-			@Override
-			public void insertBefore( final String src ) throws CannotCompileException {
-				throw new CannotCompileException( "cannot compile" );
-			}
-		} );
-		final byte[] result = transformer.transform( null, null, null, null, "a".getBytes() );
-		assertNotNull( "Did not return expected class file bytes (a)", result );
-		assertEquals( "Did not return expected class file bytes (b)", "a", new String( result ) );
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		assertFalse( "Did not transform the class", Arrays.equals( classBytes, transformer.transform( Thread.currentThread().getContextClassLoader(), "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes ) ) );
+		Config.getInstance().setArgs( null );
+	}
+
+	/**
+	 * Verifies retransformed classes are instrumented again while profiling is enabled and
+	 * left as is while it is disabled
+	 * @throws IllegalClassFormatException
+	 * @throws IOException
+	 */
+	@Test
+	public void itRetransformsClasses() throws IllegalClassFormatException, IOException {
+		Config.getInstance().setArgs( new AgentArguments( "includes=com\\.icehealthsystems\\.samples\\..*" ) );
+		final MethodTransformer transformer = new MethodTransformer();
+		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		final byte[] classBytes = TestUtils.readClassBytes( SampleApplication1.class );
+		assertFalse( "Did not transform the class", Arrays.equals( classBytes, transformer.transform( loader, "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes ) ) );
+		assertSame( "Transformed a class loaded twice", classBytes, transformer.transform( loader, "com/icehealthsystems/samples/SampleApplication1", null, null, classBytes ) );
+		assertFalse( "Did not transform a retransformed class", Arrays.equals( classBytes, transformer.transform( loader, "com/icehealthsystems/samples/SampleApplication1", SampleApplication1.class, null, classBytes ) ) );
+
+		transformer.setEnabled( false );
+		assertFalse( "Did not disable profiling", transformer.isEnabled() );
+		assertSame( "Transformed a class while disabled", classBytes, transformer.transform( loader, "com/icehealthsystems/samples/SampleApplication1", SampleApplication1.class, null, classBytes ) );
+
+		assertTrue( "Did not retransform a profiled class", transformer.shouldRetransform( SampleApplication1.class ) );
+		assertFalse( "Retransformed an inner class", transformer.shouldRetransform( Thread.State.class ) );
+		assertFalse( "Retransformed a class which is not profiled", transformer.shouldRetransform( String.class ) );
 		Config.getInstance().setArgs( null );
 	}
 }
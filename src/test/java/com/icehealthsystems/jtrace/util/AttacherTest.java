@@ -0,0 +1,53 @@
+package com.icehealthsystems.jtrace.util;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Attacher unit tests
+ * 
+ * @author Matt MacLean
+ */
+public class AttacherTest {
+	/**
+	 * Verifies the Attach API is found in the running JDK
+	 * @throws ClassNotFoundException
+	 */
+	@Test
+	public void itLoadsTheAttachApi() throws ClassNotFoundException {
+		Assert.assertEquals( "Did not load the Attach API", "com.sun.tools.attach.VirtualMachine", Attacher.loadVirtualMachineClass( System.getProperty( "java.home" ) ).getName() );
+	}
+
+	/**
+	 * Verifies a JRE without the Attach API is reported
+	 */
+	@Test
+	public void itReportsAMissingAttachApi() {
+		try {
+			Attacher.loadVirtualMachineClass( "target/no-such-java-home/jre" ).getName();
+			// the Attach API is on the classpath of newer JDKs
+		}
+		catch ( ClassNotFoundException ex ) {
+			Assert.assertTrue( "Did not report the missing JDK", ex.getMessage().contains( "requires a JDK" ) );
+		}
+	}
+
+	/**
+	 * Verifies attaching to a process which does not exist fails
+	 * @throws URISyntaxException
+	 */
+	@Test
+	public void itFailsToAttachToMissingProcesses() throws URISyntaxException {
+		final File agentJar = Attacher.getAgentJar();
+		Assert.assertTrue( "Did not find where the agent was loaded from", agentJar.exists() );
+		try {
+			Attacher.attach( "-1", agentJar, "" );
+			Assert.fail( "Attached to a missing process" );
+		}
+		catch ( ReflectiveOperationException ex ) {
+			Assert.assertNotNull( "Did not report the failure", ex.getMessage() );
+		}
+	}
+}
@@ -22,6 +22,11 @@ public class CLIMainTest {
 		// no action (if branch coverage)
 		CLIMain.main( new String[] { "unknown-action", "some-arg" } );
 
+		// attach to a missing process
+		CLIMain.main( new String[] { "attach" } );
+		CLIMain.main( new String[] { "attach", "-1" } );
+		CLIMain.main( new String[] { "attach", "-1", "includes=com\\.mypackage\\..*" } );
+
 		// load dump
 		CLIMain.main( new String[] { "load" } ); // missing file
 		CLIMain.main( new String[] { "load", "src/test/resources/test.bin" } );
@@ -1,5 +1,8 @@
 package com.icehealthsystems.jtrace.util;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import org.junit.Assert;
 import com.icehealthsystems.jtrace.runtime.LogUtils;
 import junit.framework.AssertionFailedError;
@@ -82,4 +85,22 @@ public final class TestUtils {
 	public static double n2m( final long nanos ) {
 		return nanos / 1000d / 1000d;
 	}
+
+	/**
+	 * Reads the class file bytes of a class
+	 * @param clazz
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] readClassBytes( final Class<?> clazz ) throws IOException {
+		final String resource = "/" + clazz.getName().replace( '.', '/' ) + ".class";
+		try ( InputStream in = clazz.getResourceAsStream( resource ) ) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			for ( int read = in.read( buffer ); read >= 0; read = in.read( buffer ) ) {
+				out.write( buffer, 0, read );
+			}
+			return out.toByteArray();
+		}
+	}
 }
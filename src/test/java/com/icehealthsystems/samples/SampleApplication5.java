@@ -0,0 +1,77 @@
+package com.icehealthsystems.samples;
+
+import java.util.ArrayList;
+import com.icehealthsystems.jtrace.runtime.LogUtils;
+
+/**
+ * Sample Application for unit tests which throws exceptions out of profiled methods
+ * and constructors
+ * 
+ * @author Matt MacLean
+ */
+public class SampleApplication5 extends ArrayList<String> {
+	/**
+	 * Serial version
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Main method
+	 * @param args
+	 */
+	public static void main( final String[] args ) {
+		new SampleApplication5( 10, false ).run();
+		try {
+			new SampleApplication5( 10, true );
+		}
+		catch ( IllegalStateException ex ) {
+			LogUtils.println( ex.getMessage() );
+		}
+		try {
+			// throws from the super constructor
+			new SampleApplication5( -1, false );
+		}
+		catch ( IllegalArgumentException ex ) {
+			LogUtils.println( ex.getMessage() );
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity
+	 * @param fail
+	 */
+	public SampleApplication5( final int capacity, final boolean fail ) {
+		super( capacity );
+		if ( fail ) {
+			throw new IllegalStateException( "constructor failed" );
+		}
+	}
+
+	/**
+	 * Calls a method which throws
+	 */
+	public void run() {
+		for ( int i = 0; i < 3; i++ ) {
+			try {
+				fail( i, 1d );
+			}
+			catch ( IllegalStateException ex ) {
+				LogUtils.println( ex.getMessage() );
+			}
+		}
+	}
+
+	/**
+	 * Method which throws
+	 * @param value
+	 * @param other
+	 * @return
+	 */
+	public long fail( final long value, final double other ) {
+		if ( value >= 0 ) {
+			throw new IllegalStateException( "method failed" );
+		}
+		return value;
+	}
+}